@@ -0,0 +1,328 @@
+package com.jeffreybosboom.hexcells;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.ToIntFunction;
+
+/**
+ * A puzzle's cells and constraints compiled to dense indices, with each
+ * constraint's region as a bitmask over cell indices.  Shared by all puzzles
+ * refined from the same board, as refining doesn't change cells or
+ * constraints.  The index of a board parsed again (with or without new
+ * constraints) can be {@linkplain #reindex derived} from the last one,
+ * sharing its compiled masks.
+ * <p>
+ * Arrays returned by this class are shared and must not be modified.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/19/2026
+ */
+public final class BoardIndex {
+	private final ImmutableList<Coordinate> cells;
+	private final ImmutableMap<Coordinate, Integer> indices;
+	private final ImmutableList<Constraint> constraints;
+	private final int words;
+	private final long[][] regions;
+	private final int[][] constraintsOfCell;
+	private final int[][] rings;
+	private final int[][] lines;
+	private final long[][] scopes;
+	private final int[][] scopesOfCell;
+	//distinguishes the axes, for comparing axis constraints' extractors
+	private static final Coordinate AXIS_PROBE = Coordinate.at(1, 2, -3);
+	BoardIndex(Collection<Coordinate> cells, Collection<Constraint> constraints) {
+		this.cells = ImmutableList.copyOf(cells);
+		ImmutableMap.Builder<Coordinate, Integer> indicesBuilder = ImmutableMap.builder();
+		for (int i = 0; i < this.cells.size(); ++i)
+			indicesBuilder.put(this.cells.get(i), i);
+		this.indices = indicesBuilder.build();
+		this.constraints = ImmutableList.copyOf(constraints);
+		this.words = wordsFor(this.cells.size());
+
+		int n = this.constraints.size();
+		this.regions = new long[n][];
+		this.rings = new int[n][];
+		this.lines = new int[n][];
+		this.scopes = new long[n][];
+		for (int i = 0; i < n; ++i)
+			compile(i);
+		this.constraintsOfCell = byCell(regions);
+		//usually every scope is just the region
+		this.scopesOfCell = Arrays.equals(scopes, regions) ? constraintsOfCell : byCell(scopes);
+	}
+
+	/**
+	 * Creates an index over the given index's cells whose first constraints
+	 * compile the same as all of the given index's, sharing their compiled
+	 * masks and, for the cells no later constraint touches, their per-cell
+	 * constraint lists.
+	 */
+	private BoardIndex(BoardIndex previous, ImmutableList<Constraint> constraints) {
+		this.cells = previous.cells;
+		this.indices = previous.indices;
+		this.constraints = constraints;
+		this.words = previous.words;
+
+		int n = constraints.size(), shared = previous.constraints.size();
+		this.regions = Arrays.copyOf(previous.regions, n);
+		this.rings = Arrays.copyOf(previous.rings, n);
+		this.lines = Arrays.copyOf(previous.lines, n);
+		this.scopes = Arrays.copyOf(previous.scopes, n);
+		for (int i = shared; i < n; ++i)
+			compile(i);
+		this.constraintsOfCell = byCell(regions, previous.constraintsOfCell, shared);
+		this.scopesOfCell = previous.scopesOfCell == previous.constraintsOfCell && Arrays.equals(scopes, regions)
+				? constraintsOfCell : byCell(scopes, previous.scopesOfCell, shared);
+	}
+
+	/**
+	 * Returns an index of the given cells and constraints.  If the cells are
+	 * this index's cells in the same order and the constraints include all of
+	 * this index's, as when the same board is parsed again after revealing
+	 * more constraints, the new index keeps this index's constraints' indices
+	 * (numbering the new constraints after them) and shares this index's
+	 * compiled masks, so indexing a board that hasn't changed allocates
+	 * almost nothing.
+	 */
+	BoardIndex reindex(Collection<Coordinate> cells, Collection<Constraint> constraints) {
+		if (!Iterables.elementsEqual(this.cells, cells))
+			return new BoardIndex(cells, constraints);
+		Constraint[] given = constraints.toArray(new Constraint[constraints.size()]);
+		Constraint[] ordered = new Constraint[given.length];
+		boolean[] used = new boolean[given.length];
+		int count = 0;
+		for (Constraint previous : this.constraints) {
+			int match = 0;
+			while (match < given.length && (used[match] || !compilesSame(given[match], previous)))
+				++match;
+			//a constraint went away, which doesn't happen in play
+			if (match == given.length)
+				return new BoardIndex(cells, constraints);
+			used[match] = true;
+			ordered[count++] = given[match];
+		}
+		for (int i = 0; i < given.length; ++i)
+			if (!used[i])
+				ordered[count++] = given[i];
+		return new BoardIndex(this, ImmutableList.copyOf(ordered));
+	}
+
+	/**
+	 * Returns true if the given constraints compile to the same masks: the
+	 * same kind of constraint and contiguity marking over the same region,
+	 * around the same center or along the same axis.  (Targets aren't
+	 * compiled.)
+	 */
+	private static boolean compilesSame(Constraint a, Constraint b) {
+		if (a == b) return true;
+		if (a.getClass() != b.getClass() || a.isContiguous() != b.isContiguous()
+				|| a.isDiscontiguous() != b.isDiscontiguous() || a.region().size() != b.region().size())
+			return false;
+		//by index, as List.equals may allocate iterators
+		for (int i = 0; i < a.region().size(); ++i)
+			if (!a.region().get(i).equals(b.region().get(i)))
+				return false;
+		if (a instanceof CellConstraint)
+			return ((CellConstraint)a).center().equals(((CellConstraint)b).center());
+		if (a instanceof AxisConstraint) {
+			AxisConstraint x = (AxisConstraint)a, y = (AxisConstraint)b;
+			return x.axisExtractor().applyAsInt(AXIS_PROBE) == y.axisExtractor().applyAsInt(AXIS_PROBE)
+					&& x.sortAxisExtractor().applyAsInt(AXIS_PROBE) == y.sortAxisExtractor().applyAsInt(AXIS_PROBE);
+		}
+		return true;
+	}
+
+	/**
+	 * Compiles the given constraint's region, ring, line and scope.
+	 */
+	private void compile(int i) {
+		Constraint c = constraints.get(i);
+		regions[i] = new long[words];
+		for (Coordinate cell : c.region()) {
+			int index = indices.get(cell);
+			regions[i][index >>> 6] |= 1L << index;
+		}
+		if (c instanceof CellConstraint)
+			rings[i] = ring((CellConstraint)c);
+		if (c instanceof AxisConstraint)
+			lines[i] = line((AxisConstraint)c);
+		scopes[i] = regions[i];
+		if (lines[i] != null && (c.isContiguous() || c.isDiscontiguous())) {
+			scopes[i] = regions[i].clone();
+			for (int cell : lines[i])
+				scopes[i][cell >>> 6] |= 1L << cell;
+		}
+	}
+
+	/**
+	 * Returns, for each cell, the indices of the constraints whose masks
+	 * include it, in increasing order, given the lists for the masks before
+	 * the given index, which are shared for the cells no later mask includes.
+	 */
+	private int[][] byCell(long[][] masks, int[][] previous, int from) {
+		if (from == masks.length) return previous;
+		int[][] byCell = previous.clone();
+		for (int c = from; c < masks.length; ++c)
+			for (int w = 0; w < words; ++w)
+				for (long bits = masks[c][w]; bits != 0; bits &= bits - 1) {
+					int cell = (w << 6) + Long.numberOfTrailingZeros(bits);
+					int[] list = Arrays.copyOf(byCell[cell], byCell[cell].length + 1);
+					list[list.length - 1] = c;
+					byCell[cell] = list;
+				}
+		return byCell;
+	}
+
+	/**
+	 * Returns, for each cell, the indices of the constraints whose masks
+	 * include it, in increasing order.
+	 */
+	private int[][] byCell(long[][] masks) {
+		int[] counts = new int[cells.size()];
+		for (long[] mask : masks)
+			for (int w = 0; w < words; ++w)
+				for (long bits = mask[w]; bits != 0; bits &= bits - 1)
+					++counts[(w << 6) + Long.numberOfTrailingZeros(bits)];
+		int[][] byCell = new int[cells.size()][];
+		for (int i = 0; i < byCell.length; ++i) {
+			byCell[i] = new int[counts[i]];
+			counts[i] = 0;
+		}
+		for (int c = 0; c < masks.length; ++c)
+			for (int w = 0; w < words; ++w)
+				for (long bits = masks[c][w]; bits != 0; bits &= bits - 1) {
+					int cell = (w << 6) + Long.numberOfTrailingZeros(bits);
+					byCell[cell][counts[cell]++] = c;
+				}
+		return byCell;
+	}
+
+	private int[] ring(CellConstraint constraint) {
+		int[] ring = new int[Coordinate.NEIGHBOR_COUNT];
+		int inRing = 0;
+		for (int i = 0; i < ring.length; ++i) {
+			Coordinate neighbor = constraint.center().neighbor(i);
+			ring[i] = constraint.region().contains(neighbor) ? indices.get(neighbor) : -1;
+			if (ring[i] != -1) ++inRing;
+		}
+		//unless the region is all neighbors, it isn't a ring
+		return inRing == constraint.region().size() ? ring : null;
+	}
+
+	private int[] line(AxisConstraint constraint) {
+		ToIntFunction<Coordinate> axisExtractor = constraint.axisExtractor(),
+				sortAxisExtractor = constraint.sortAxisExtractor();
+		int axisValue = axisExtractor.applyAsInt(constraint.region().get(0));
+		int length = 0;
+		for (int i = 0; i < cells.size(); ++i)
+			if (axisExtractor.applyAsInt(cells.get(i)) == axisValue)
+				++length;
+		//insertion sort along the axis (lines are short)
+		int[] line = new int[length];
+		length = 0;
+		for (int i = 0; i < cells.size(); ++i) {
+			if (axisExtractor.applyAsInt(cells.get(i)) != axisValue) continue;
+			int position = sortAxisExtractor.applyAsInt(cells.get(i)), j = length++;
+			for (; j > 0 && sortAxisExtractor.applyAsInt(cells.get(line[j - 1])) > position; --j)
+				line[j] = line[j - 1];
+			line[j] = i;
+		}
+		return line;
+	}
+
+	/**
+	 * Returns the number of longs needed for a bitmask of the given size.
+	 */
+	public static int wordsFor(int bits) {
+		return (bits + 63) >>> 6;
+	}
+
+	public int cellCount() {
+		return cells.size();
+	}
+
+	/**
+	 * Returns the number of longs in a bitmask over this board's cells.
+	 */
+	public int words() {
+		return words;
+	}
+
+	public Coordinate cell(int index) {
+		return cells.get(index);
+	}
+
+	public int indexOf(Coordinate cell) {
+		return indices.get(cell);
+	}
+
+	public int constraintCount() {
+		return constraints.size();
+	}
+
+	public Constraint constraint(int index) {
+		return constraints.get(index);
+	}
+
+	public int target(int constraint) {
+		return constraints.get(constraint).target();
+	}
+
+	public int regionSize(int constraint) {
+		return constraints.get(constraint).region().size();
+	}
+
+	/**
+	 * Returns the given constraint's region as a bitmask over cell indices.
+	 */
+	public long[] region(int constraint) {
+		return regions[constraint];
+	}
+
+	/**
+	 * Returns the indices of the constraints whose regions include the given
+	 * cell.
+	 */
+	public int[] constraintsOf(int cell) {
+		return constraintsOfCell[cell];
+	}
+
+	/**
+	 * If the given constraint is a cell constraint whose region is within its
+	 * center's neighbors, returns the indices of the neighbors clockwise from
+	 * the top (as {@link Coordinate#neighbors()}), with -1 for neighbors not in
+	 * the region; otherwise, returns null.
+	 */
+	public int[] ring(int constraint) {
+		return rings[constraint];
+	}
+
+	/**
+	 * If the given constraint is an axis constraint, returns the indices of
+	 * all the board's cells on its axis in order along the axis; otherwise,
+	 * returns null.
+	 */
+	public int[] line(int constraint) {
+		return lines[constraint];
+	}
+
+	/**
+	 * Returns the given constraint's scope, the cells whose states it depends
+	 * on, as a bitmask over cell indices.  This is its region, plus its whole
+	 * line for contiguity-marked axis constraints (whose contiguity is judged
+	 * along the line).
+	 */
+	public long[] scope(int constraint) {
+		return scopes[constraint];
+	}
+
+	/**
+	 * Returns the indices of the constraints whose scopes include the given
+	 * cell.
+	 */
+	public int[] scopesOf(int cell) {
+		return scopesOfCell[cell];
+	}
+}
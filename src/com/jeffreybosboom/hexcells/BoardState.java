@@ -0,0 +1,342 @@
+package com.jeffreybosboom.hexcells;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * A mutable view of a puzzle's cell states as present and absent bitmasks over
+ * a {@link BoardIndex}, for rules that work with masks instead of streams.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/19/2026
+ */
+public final class BoardState {
+	private BoardIndex index;
+	private long[] present, absent;
+	//constraints with unknown cells, over constraint indices
+	private long[] active;
+	private int deductions;
+	private BiConsumer<Coordinate, CellState> listener;
+	private BoardState() {}
+	private BoardState(BoardIndex index, long[] active) {
+		this.index = index;
+		this.present = new long[index.words()];
+		this.absent = new long[index.words()];
+		this.active = active;
+	}
+
+	public static BoardState of(Puzzle puzzle) {
+		BoardState state = new BoardState();
+		state.load(puzzle);
+		return state;
+	}
+
+	/**
+	 * Returns an empty state, to be {@link #load(Puzzle) loaded} later.
+	 */
+	static BoardState empty() {
+		return new BoardState();
+	}
+
+	/**
+	 * Replaces this state with the given puzzle's cell states, reusing this
+	 * state's masks if they're the right size, and removes the listener.
+	 */
+	void load(Puzzle puzzle) {
+		this.index = puzzle.index();
+		int words = index.words();
+		if (present == null || present.length != words) {
+			present = new long[words];
+			absent = new long[words];
+		} else {
+			Arrays.fill(present, 0);
+			Arrays.fill(absent, 0);
+		}
+		long[] puzzleActive = puzzle.activeMask();
+		if (active == null || active.length != puzzleActive.length)
+			active = puzzleActive.clone();
+		else
+			System.arraycopy(puzzleActive, 0, active, 0, active.length);
+		deductions = 0;
+		listener = null;
+		for (int i = 0; i < index.cellCount(); ++i) {
+			CellState s = puzzle.at(index.cell(i));
+			if (s == CellState.PRESENT)
+				present[i >>> 6] |= 1L << i;
+			else if (s == CellState.ABSENT)
+				absent[i >>> 6] |= 1L << i;
+		}
+	}
+
+	public BoardIndex index() {
+		return index;
+	}
+
+	/**
+	 * Sets a listener to be called with each cell as it's marked, so callers
+	 * can act on deductions before rules finish.  Replaces any previous
+	 * listener; null removes it.
+	 */
+	public void listen(BiConsumer<Coordinate, CellState> listener) {
+		this.listener = listener;
+	}
+
+	public boolean isPresent(int cell) {
+		return (present[cell >>> 6] & (1L << cell)) != 0;
+	}
+
+	public boolean isAbsent(int cell) {
+		return (absent[cell >>> 6] & (1L << cell)) != 0;
+	}
+
+	public boolean isUnknown(int cell) {
+		return ((present[cell >>> 6] | absent[cell >>> 6]) & (1L << cell)) == 0;
+	}
+
+	/**
+	 * Returns the present bits for cells 64 * word through 64 * word + 63.
+	 */
+	public long presentWord(int word) {
+		return present[word];
+	}
+
+	/**
+	 * Returns the absent bits for cells 64 * word through 64 * word + 63.
+	 */
+	public long absentWord(int word) {
+		return absent[word];
+	}
+
+	public CellState at(int cell) {
+		return isPresent(cell) ? CellState.PRESENT : isAbsent(cell) ? CellState.ABSENT : CellState.UNKNOWN;
+	}
+
+	public boolean isActive(int constraint) {
+		return (active[constraint >>> 6] & (1L << constraint)) != 0;
+	}
+
+	/**
+	 * Returns the index of the first active constraint at or after the given
+	 * index, or -1 if there isn't one.  Constraints are discharged (made
+	 * inactive) when their last unknown cell is marked.
+	 */
+	public int nextActive(int fromConstraint) {
+		int word = fromConstraint >>> 6;
+		if (word >= active.length) return -1;
+		long bits = active[word] & (-1L << fromConstraint);
+		while (true) {
+			if (bits != 0)
+				return (word << 6) + Long.numberOfTrailingZeros(bits);
+			if (++word == active.length)
+				return -1;
+			bits = active[word];
+		}
+	}
+
+	private void discharge(int cell) {
+		for (int c : index.constraintsOf(cell))
+			if (isActive(c) && countUnknown(index.region(c)) == 0)
+				active[c >>> 6] &= ~(1L << c);
+	}
+
+	private void marked(int cell, CellState state) {
+		discharge(cell);
+		if (listener != null)
+			listener.accept(index.cell(cell), state);
+	}
+
+	/**
+	 * Splits the unknown cells into components connected through the scopes
+	 * of active constraints.  No active constraint sees cells in two
+	 * components, so components can be deduced independently.
+	 * @return the components, as bitmasks over cell indices
+	 */
+	public List<long[]> components() {
+		long[] remaining = new long[present.length];
+		for (int w = 0; w < remaining.length; ++w)
+			remaining[w] = ~(present[w] | absent[w]);
+		if (index.cellCount() % 64 != 0)
+			remaining[remaining.length - 1] &= (1L << index.cellCount()) - 1;
+		int[] stack = new int[index.cellCount()];
+		List<long[]> components = new ArrayList<>();
+		for (int w = 0; w < remaining.length; ++w)
+			while (remaining[w] != 0) {
+				int seed = (w << 6) + Long.numberOfTrailingZeros(remaining[w]);
+				long[] component = new long[remaining.length];
+				component[w] |= 1L << seed;
+				remaining[w] &= ~(1L << seed);
+				int top = 0;
+				stack[top++] = seed;
+				while (top > 0) {
+					int cell = stack[--top];
+					for (int c : index.scopesOf(cell)) {
+						if (!isActive(c)) continue;
+						long[] scope = index.scope(c);
+						for (int v = 0; v < remaining.length; ++v) {
+							long added = scope[v] & remaining[v];
+							if (added == 0) continue;
+							remaining[v] &= ~added;
+							component[v] |= added;
+							for (; added != 0; added &= added - 1)
+								stack[top++] = (v << 6) + Long.numberOfTrailingZeros(added);
+						}
+					}
+				}
+				components.add(component);
+			}
+		return components;
+	}
+
+	/**
+	 * Returns a copy of this state in which only the active constraints
+	 * seeing the given cells are active, for deducing a component separately.
+	 * The copy has no listener.
+	 * @see #components()
+	 * @see #merge(BoardState)
+	 */
+	public BoardState restrictedTo(long[] cells) {
+		long[] restrictedActive = new long[active.length];
+		for (int w = 0; w < cells.length; ++w)
+			for (long bits = cells[w]; bits != 0; bits &= bits - 1)
+				for (int c : index.scopesOf((w << 6) + Long.numberOfTrailingZeros(bits)))
+					if (isActive(c))
+						restrictedActive[c >>> 6] |= 1L << c;
+		BoardState restricted = new BoardState(index, restrictedActive);
+		System.arraycopy(present, 0, restricted.present, 0, present.length);
+		System.arraycopy(absent, 0, restricted.absent, 0, absent.length);
+		return restricted;
+	}
+
+	/**
+	 * Copies the cells marked in the given state (which must have been
+	 * restricted from this one, to cells disjoint from any other merged
+	 * state) into this one.  The listener isn't called, as the restricted
+	 * state's listener already saw them.
+	 */
+	public void merge(BoardState restricted) {
+		checkArgument(restricted.index == index);
+		for (int w = 0; w < present.length; ++w) {
+			long newPresent = restricted.present[w] & ~present[w], newAbsent = restricted.absent[w] & ~absent[w];
+			assert (newPresent & absent[w]) == 0 && (newAbsent & present[w]) == 0;
+			present[w] |= newPresent;
+			absent[w] |= newAbsent;
+			for (long cells = newPresent | newAbsent; cells != 0; cells &= cells - 1)
+				discharge((w << 6) + Long.numberOfTrailingZeros(cells));
+		}
+		deductions += restricted.deductions;
+	}
+
+	/**
+	 * Returns the number of present cells in the given mask.
+	 */
+	public int countPresent(long[] mask) {
+		int count = 0;
+		for (int i = 0; i < mask.length; ++i)
+			count += Long.bitCount(mask[i] & present[i]);
+		return count;
+	}
+
+	/**
+	 * Returns the number of absent cells in the given mask.
+	 */
+	public int countAbsent(long[] mask) {
+		int count = 0;
+		for (int i = 0; i < mask.length; ++i)
+			count += Long.bitCount(mask[i] & absent[i]);
+		return count;
+	}
+
+	/**
+	 * Returns the number of unknown cells in the given mask.
+	 */
+	public int countUnknown(long[] mask) {
+		int count = 0;
+		for (int i = 0; i < mask.length; ++i)
+			count += Long.bitCount(mask[i] & ~(present[i] | absent[i]));
+		return count;
+	}
+
+	public void markPresent(int cell) {
+		checkUnknown(cell);
+		present[cell >>> 6] |= 1L << cell;
+		++deductions;
+		marked(cell, CellState.PRESENT);
+	}
+
+	public void markAbsent(int cell) {
+		checkUnknown(cell);
+		absent[cell >>> 6] |= 1L << cell;
+		++deductions;
+		marked(cell, CellState.ABSENT);
+	}
+
+	/**
+	 * Like checkState, but without allocating the message arguments on every
+	 * call, as this is called for every deduction.
+	 */
+	private void checkUnknown(int cell) {
+		if (!isUnknown(cell))
+			throw new IllegalStateException(index.cell(cell) + " is " + at(cell));
+	}
+
+	/**
+	 * Marks every unknown cell in the given mask present.
+	 * @return the number of cells marked
+	 */
+	public int markAllPresent(long[] mask) {
+		int marked = 0;
+		for (int i = 0; i < mask.length; ++i) {
+			long unknown = mask[i] & ~(present[i] | absent[i]);
+			present[i] |= unknown;
+			marked += Long.bitCount(unknown);
+			deductions += Long.bitCount(unknown);
+			markedAll(i, unknown, CellState.PRESENT);
+		}
+		return marked;
+	}
+
+	/**
+	 * Marks every unknown cell in the given mask absent.
+	 * @return the number of cells marked
+	 */
+	public int markAllAbsent(long[] mask) {
+		int marked = 0;
+		for (int i = 0; i < mask.length; ++i) {
+			long unknown = mask[i] & ~(present[i] | absent[i]);
+			absent[i] |= unknown;
+			marked += Long.bitCount(unknown);
+			deductions += Long.bitCount(unknown);
+			markedAll(i, unknown, CellState.ABSENT);
+		}
+		return marked;
+	}
+
+	private void markedAll(int word, long cells, CellState state) {
+		for (; cells != 0; cells &= cells - 1)
+			marked((word << 6) + Long.numberOfTrailingZeros(cells), state);
+	}
+
+	/**
+	 * Returns the number of cells marked since this state was created.
+	 */
+	public int deductions() {
+		return deductions;
+	}
+
+	/**
+	 * Returns a puzzle with this state's cell states, or the given puzzle if
+	 * nothing has been marked.
+	 * @param original the puzzle this state was created from
+	 * @return a puzzle with this state's cell states
+	 */
+	public Puzzle toPuzzle(Puzzle original) {
+		if (deductions == 0) return original;
+		ImmutableMap.Builder<Coordinate, CellState> cells = ImmutableMap.builder();
+		for (int i = 0; i < index.cellCount(); ++i)
+			cells.put(index.cell(i), at(i));
+		return original.withCells(cells.build(), active.clone());
+	}
+}
@@ -0,0 +1,98 @@
+package com.jeffreybosboom.hexcells;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clicks a batch of cells, visiting them in a nearest-neighbor tour starting
+ * from wherever the mouse was left to cut down on mouse travel.  Optionally
+ * verifies each click by capturing the middle of the cell and waiting for its
+ * interior to turn the expected color.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/19/2026
+ */
+public final class ClickScheduler {
+	private static final long VERIFY_TIMEOUT_MILLIS = 250, VERIFY_POLL_MILLIS = 10;
+	private final Screen screen;
+	private final boolean verify;
+	private Region.Point mouse = new Region.Point(0, 0);
+	public ClickScheduler(Screen screen, boolean verify) {
+		this.screen = screen;
+		this.verify = verify;
+	}
+
+	/**
+	 * Clicks each of the given points, left-clicking for present and
+	 * right-clicking for absent.
+	 * @param targets hex centers mapped to the state to mark them
+	 * @param hexSize the size of a hexagon, for verification
+	 * @return the number of clicks that could not be verified (always 0 if
+	 * verification is disabled)
+	 */
+	public int clickAll(Map<Region.Point, CellState> targets, Dimension hexSize) {
+		int unverified = 0;
+		for (Map.Entry<Region.Point, CellState> e : tour(targets).entrySet()) {
+			Region.Point p = e.getKey();
+			if (e.getValue() == CellState.PRESENT)
+				screen.leftClick(p);
+			else if (e.getValue() == CellState.ABSENT)
+				screen.rightClick(p);
+			else
+				throw new IllegalArgumentException(e.toString());
+			mouse = p;
+			if (verify && !awaitState(p, e.getValue(), hexSize))
+				++unverified;
+		}
+		return unverified;
+	}
+
+	private Map<Region.Point, CellState> tour(Map<Region.Point, CellState> targets) {
+		List<Region.Point> remaining = new ArrayList<>(targets.keySet());
+		Map<Region.Point, CellState> tour = new LinkedHashMap<>(targets.size());
+		Region.Point current = mouse;
+		while (!remaining.isEmpty()) {
+			int best = 0;
+			long bestDistance = Long.MAX_VALUE;
+			for (int i = 0; i < remaining.size(); ++i) {
+				long dx = remaining.get(i).x - current.x, dy = remaining.get(i).y - current.y;
+				long distance = dx * dx + dy * dy;
+				if (distance < bestDistance) {
+					best = i;
+					bestDistance = distance;
+				}
+			}
+			//swap-remove; the order of the rest doesn't matter
+			current = remaining.get(best);
+			remaining.set(best, remaining.get(remaining.size() - 1));
+			remaining.remove(remaining.size() - 1);
+			tour.put(current, targets.get(current));
+		}
+		return tour;
+	}
+
+	private boolean awaitState(Region.Point p, CellState state, Dimension hexSize) {
+		//The middle half of the hex is all interior, though it may have a
+		//number in it once revealed.
+		Rectangle box = new Rectangle(p.x - hexSize.width / 4, p.y - hexSize.height / 4,
+				hexSize.width / 2, hexSize.height / 2);
+		int expected = Colors.HEXAGON_INTERIOR_COLORS.inverse().get(state).getRGB();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(VERIFY_TIMEOUT_MILLIS);
+		while (true) {
+			BufferedImage image = screen.capture(box);
+			for (int y = 0; y < image.getHeight(); ++y)
+				for (int x = 0; x < image.getWidth(); ++x)
+					if (image.getRGB(x, y) == expected)
+						return true;
+			if (System.nanoTime() >= deadline)
+				return false;
+			Uninterruptibles.sleepUninterruptibly(VERIFY_POLL_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+}
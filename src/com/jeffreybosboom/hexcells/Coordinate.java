@@ -1,6 +1,5 @@
 package com.jeffreybosboom.hexcells;
 
-import static com.google.common.base.Preconditions.checkArgument;
 import java.util.Arrays;
 import java.util.stream.Stream;
 
@@ -17,7 +16,9 @@ public final class Coordinate {
 		this.x = x;
 		this.y = y;
 		this.z = z;
-		checkArgument(x + y + z == 0, toString());
+		//not checkArgument, which would format the message for every coordinate
+		if (x + y + z != 0)
+			throw new IllegalArgumentException(toString());
 	}
 	public static Coordinate at(int x, int y, int z) {
 		//TODO: consider interning
@@ -43,12 +44,20 @@ public final class Coordinate {
 	}
 
 	//clockwise from top
-	private final int[][] NEIGHBORS = {
+	private static final int[][] NEIGHBORS = {
 		{0, 1, -1}, {1, 0, -1}, {1, -1, 0}, {0, -1, 1}, {-1, 0, 1}, {-1, 1, 0}
 	};
+	public static final int NEIGHBOR_COUNT = NEIGHBORS.length;
 	public Stream<Coordinate> neighbors() {
 		return Arrays.stream(NEIGHBORS).map(this::translate);
 	}
+	/**
+	 * Returns the given neighbor, numbered clockwise from the top as in
+	 * {@link #neighbors()}.
+	 */
+	public Coordinate neighbor(int i) {
+		return translate(NEIGHBORS[i]);
+	}
 	public Coordinate up() {
 		return translate(NEIGHBORS[0]);
 	}
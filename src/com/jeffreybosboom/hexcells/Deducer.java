@@ -1,33 +1,163 @@
 package com.jeffreybosboom.hexcells;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.jeffreybosboom.hexcells.rules.*;
-import java.util.function.Function;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
 
 /**
- *
+ * Runs the rules to a joint fixpoint.  Rules are tried cheapest first; when a
+ * rule marks something we go back to the cheapest rule, and we only escalate
+ * to the next rule when every rule before it has stalled, so expensive rules
+ * only run on states the cheap rules can't make progress on.  The deducer
+ * never stops until every rule has stalled on the same state, so the result
+ * doesn't depend on the order rules are tried in.
+ * <p>
+ * The order is refined over the session by each rule's observed yield
+ * (deductions per unit time), seeded with its declared cost, so a rule that
+ * proves expensive for what it finds is deferred behind ones that don't.
+ * <p>
+ * Deduction can be cut short by a deadline ({@link #deduceUntil(Puzzle,
+ * long)}), in which case we return what we've found so far; as cheap rules
+ * run first, that's most of what the fixpoint would find.
  * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
  * @since 9/13/2014
  */
 public final class Deducer {
 	private Deducer() {}
 
-	private static final Function<Puzzle, Puzzle> RULES = fixpoint(Function.<Puzzle>identity()
-			.andThen(fixpoint(new BasicRule()))
-			.andThen(fixpoint(new SubsetChecking()))
+	static final ImmutableList<RuleStats> RULES = ImmutableList.of(
+			new RuleStats(new CellConstraintTable()),
+			new RuleStats(new BasicRule()),
+			new RuleStats(new LinearRule()),
+			new RuleStats(new SubsetChecking())
 	);
 
 	public static Puzzle deduce(Puzzle puzzle) {
-		return RULES.apply(puzzle);
+		return deduce(puzzle, null);
 	}
 
-	private static <T, R extends T> Function<T, R> fixpoint(Function<T, R> f) {
-		return (t) -> {
-			T current = t;
-			while (true) {
-				R next = f.apply(current);
-				if (current.equals(next)) return next;
-				current = next;
-			}
-		};
+	/**
+	 * Deduces as much as possible about the given puzzle before the given
+	 * deadline.
+	 * @param puzzle the puzzle
+	 * @param deadline the {@link System#nanoTime()} reading after which to
+	 * stop
+	 * @return the puzzle with the deductions found, and whether they're all
+	 * the rules could find
+	 * @see SolverContext#deduceUntil(Puzzle, Map, BiConsumer, long)
+	 */
+	public static Result deduceUntil(Puzzle puzzle, long deadline) {
+		return new SolverContext().deduceUntil(puzzle, ImmutableMap.of(), null, deadline);
+	}
+
+	/**
+	 * Deduces as much as possible about the given puzzle, passing each newly
+	 * known cell to the given listener as soon as it's deduced, so callers can
+	 * act on deductions before the fixpoint is reached.  This allocates a
+	 * new {@link SolverContext} per call; callers deducing every round should
+	 * keep their own.
+	 * @param puzzle the puzzle
+	 * @param listener called with each deduced cell and its state, or null
+	 * @return the puzzle with all deductions applied
+	 * @see SolverContext#deduce(Puzzle, BiConsumer)
+	 */
+	public static Puzzle deduce(Puzzle puzzle, BiConsumer<Coordinate, CellState> listener) {
+		return new SolverContext().deduce(puzzle, listener);
+	}
+
+	/**
+	 * Below this many cells, splitting into components costs more than it
+	 * saves.
+	 */
+	static final int PARALLEL_THRESHOLD = 128;
+
+	/**
+	 * Runs the rules to a fixpoint, until the deadline (if any) passes, or
+	 * until the stop flag (if any) is set.  Both are checked between rule
+	 * passes, so we may overrun them by one pass.
+	 * @return true iff we reached the fixpoint
+	 */
+	static boolean deduce(BoardState state, RuleStats[] order, OptionalLong deadline, AtomicBoolean stop) {
+		for (int i = 0; i < order.length && state.nextActive(0) >= 0; ) {
+			if (deadline.isPresent() && System.nanoTime() - deadline.getAsLong() >= 0)
+				return false;
+			if (stop != null && stop.get())
+				return false;
+			RuleStats rule = order[i];
+			int before = state.deductions();
+			long start = System.nanoTime();
+			rule.rule.apply(state);
+			int found = state.deductions() - before;
+			rule.record(found, System.nanoTime() - start);
+			//new deductions may unstick the cheaper rules
+			i = found > 0 ? 0 : i + 1;
+		}
+		return true;
+	}
+
+	/**
+	 * The result of deducing with a deadline.
+	 */
+	public static final class Result {
+		private final Puzzle puzzle;
+		private final boolean complete;
+		Result(Puzzle puzzle, boolean complete) {
+			this.puzzle = puzzle;
+			this.complete = complete;
+		}
+
+		/**
+		 * Returns the puzzle with every deduction found applied.  Every
+		 * deduction is sound even if the result isn't complete.
+		 */
+		public Puzzle puzzle() {
+			return puzzle;
+		}
+
+		/**
+		 * Returns true iff deduction reached the fixpoint before the
+		 * deadline or being stopped, so deducing further would find nothing
+		 * more.
+		 */
+		public boolean isComplete() {
+			return complete;
+		}
+
+		@Override
+		public String toString() {
+			return (complete ? "complete: " : "partial: ") + puzzle;
+		}
+	}
+
+	/**
+	 * A rule with its yield so far this session.  Updated concurrently by
+	 * every thread deducing.
+	 */
+	static final class RuleStats {
+		/**
+		 * The cost of a cost-1 rule's deduction before we've measured it, and
+		 * how many deductions' worth of weight that guess carries.
+		 */
+		private static final double PRIOR_NANOS_PER_DEDUCTION = 10_000, PRIOR_DEDUCTIONS = 100;
+		private final Rule rule;
+		private final LongAdder nanos = new LongAdder(), deductions = new LongAdder();
+		RuleStats(Rule rule) {
+			this.rule = rule;
+		}
+
+		void record(int found, long elapsedNanos) {
+			nanos.add(elapsedNanos);
+			deductions.add(found);
+		}
+
+		double nanosPerDeduction() {
+			double prior = rule.cost() * PRIOR_NANOS_PER_DEDUCTION;
+			return (nanos.sum() + prior * PRIOR_DEDUCTIONS) / (deductions.sum() + PRIOR_DEDUCTIONS);
+		}
 	}
 }
@@ -6,27 +6,37 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Range;
 import com.google.common.collect.RangeSet;
 import com.google.common.collect.TreeRangeSet;
-import com.google.common.io.CharStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.common.util.concurrent.Uninterruptibles;
 import com.jeffreybosboom.hexcells.Recognizer.Result.ConstraintKind;
 import com.jeffreybosboom.hexcells.Recognizer.Result.ConstraintPosition;
-import java.awt.AWTException;
+import com.jeffreybosboom.hexcells.StageTimings.Stage;
+import com.jeffreybosboom.hexcells.rules.SolutionCounter;
 import java.awt.Color;
-import java.awt.Graphics2D;
+import java.awt.Dimension;
 import java.awt.Rectangle;
-import java.awt.Robot;
-import java.awt.event.InputEvent;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.util.Arrays;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
 
@@ -36,38 +46,121 @@ import java.util.stream.Collectors;
  * @since 9/7/2014
  */
 public final class Effector {
-	private final Robot robot;
-	private final Recognizer recognizer = new Recognizer();
-	private final Rectangle hexcellsRect;
-	public Effector() throws AWTException, InterruptedException, IOException {
-		this.robot = new Robot();
-		robot.setAutoDelay(100);
-		this.hexcellsRect = locateHexcells();
+	private final Screen screen;
+	//Recognizer is immutable once built, and building it is slow.
+	private static final Recognizer recognizer = new Recognizer();
+	private final SettleWaiter settleWaiter;
+	private final ClickScheduler clickScheduler;
+	private final ExecutorService deducerThread = Executors.newSingleThreadExecutor(
+			new ThreadFactoryBuilder().setDaemon(true).setNameFormat("deducer-%d").build());
+	//only used on the deducer thread
+	private final SolverContext solver = new SolverContext();
+	private static final Pair<Coordinate, CellState> DEDUCTION_DONE = new Pair<>(null, null);
+	private static final int MAX_SEGMENTATION_STEP = 8;
+	/**
+	 * Slack around the board-edge constraint windows in a board-cropped
+	 * capture, in pixels.
+	 */
+	private static final int CROP_SLACK = 8;
+	private final StageTimings timings;
+	/**
+	 * The bounding box of the hexagons in the last parsed capture, in window
+	 * coordinates.
+	 */
+	private Rectangle boardRect;
+	/**
+	 * The size of the game window, as of the last full-window capture.
+	 */
+	private Dimension windowSize;
+	/**
+	 * The last frame captured for parsing, for the screen to reuse.  The
+	 * pipeline never modifies frames.
+	 */
+	private BufferedImage frame;
+	/**
+	 * The average size of the hexagons in the last parsed capture.
+	 */
+	private Dimension hexSize;
+	/**
+	 * Where to record the session, or null.
+	 */
+	private SessionRecorder recorder;
+	/**
+	 * Deducing ahead for the next round while the board settles, or null.
+	 */
+	private Speculation speculation;
+	/**
+	 * How long a round may spend from capture to the end of deduction, or
+	 * Long.MAX_VALUE for no limit.
+	 */
+	private long roundBudgetNanos = Long.MAX_VALUE;
+	/**
+	 * How long to count solutions for when we stall without a round budget.
+	 */
+	private static final long STALL_COUNT_NANOS = TimeUnit.SECONDS.toNanos(1);
+	public Effector(Screen screen, SettleWaiter settleWaiter, StageTimings timings, boolean verifyClicks) {
+		this.screen = screen;
+		this.settleWaiter = settleWaiter;
+		this.clickScheduler = new ClickScheduler(screen, verifyClicks);
+		this.timings = timings;
+	}
+	public Effector(Screen screen, SettleWaiter settleWaiter, StageTimings timings) {
+		this(screen, settleWaiter, timings, true);
+	}
+	public Effector(Screen screen, SettleWaiter settleWaiter) {
+		this(screen, settleWaiter, new StageTimings());
+	}
+	public Effector(Screen screen) {
+		this(screen, new SettleWaiter(150, 40, 3000));
+	}
+
+	/**
+	 * Returns the per-stage latencies of the rounds played so far.
+	 */
+	public StageTimings timings() {
+		return timings;
+	}
+
+	/**
+	 * Records each round's capture, parsed puzzle and deductions from now on.
+	 * The caller remains responsible for closing the recorder.
+	 * @param recorder the recorder, or null to stop recording
+	 */
+	public void recordTo(SessionRecorder recorder) {
+		this.recorder = recorder;
 	}
 
-	private static Rectangle locateHexcells() throws InterruptedException, IOException {
-		ProcessBuilder pb = new ProcessBuilder("cmdow.exe Hexcells /B /P".split(" "));
-		Process p = pb.start();
-		p.waitFor();
-		Reader r = new InputStreamReader(p.getInputStream());
-		List<String> readLines = CharStreams.readLines(r);
-		if (readLines.size() != 1)
-			throw new RuntimeException(readLines.toString());
-		String[] fields = readLines.get(0).trim().split("\\h+");
-		System.out.println(Arrays.toString(fields));
-		//These include window decorations, whose size varies by computer, but
-		//they shouldn't affect our parsing.
-		int windowLeft = Integer.parseInt(fields[fields.length-6]);
-		int windowTop = Integer.parseInt(fields[fields.length-5]);
-		int windowWidth = Integer.parseInt(fields[fields.length-4]);
-		int windowHeight = Integer.parseInt(fields[fields.length-3]);
-		return new Rectangle(windowLeft, windowTop, windowWidth, windowHeight);
+	/**
+	 * Limits how long each round spends capturing, parsing and deducing;
+	 * when the budget runs out, we click what we've deduced so far and leave
+	 * the rest for the next round.  A round that has deduced nothing by then
+	 * keeps deducing, as clicking nothing would only repeat the round.
+	 * @param budget the budget, or Long.MAX_VALUE for no limit
+	 * @param unit the budget's unit
+	 */
+	public void setRoundBudget(long budget, TimeUnit unit) {
+		this.roundBudgetNanos = budget == Long.MAX_VALUE ? Long.MAX_VALUE : unit.toNanos(budget);
 	}
 
 	//<editor-fold defaultstate="collapsed" desc="Image parsing">
-	private Pair<Puzzle, Map<Coordinate, Region.Point>> fromImage(BufferedImage image) {
-		ImmutableSet<Region> regions = Region.connectedComponents(image,
-				Colors.HEXAGON_BORDER_COLORS.keySet().stream().map(Color::getRGB).collect(Collectors.toSet()));
+	/**
+	 * Parses the given frame.
+	 * @param image the frame; not modified
+	 * @param origin the frame's origin in the game window
+	 * @return the puzzle, and the hexagon centers in window coordinates
+	 */
+	private Pair<Puzzle, Map<Coordinate, Region.Point>> fromImage(BufferedImage image, Region.Point origin) {
+		long start = System.nanoTime();
+		Set<Integer> borderColors = Colors.HEXAGON_BORDER_COLORS.keySet().stream()
+				.map(Color::getRGB).collect(Collectors.toSet());
+		int step = segmentationStep(), processors = Runtime.getRuntime().availableProcessors();
+		//when we have to label every pixel, share the work among the cores
+		ImmutableSet<Region> regions = step == 1 && processors > 1
+				? Region.connectedComponentsInStrips(image, borderColors, processors)
+				: Region.connectedComponents(image, borderColors, step);
+		long gridStart = timings.recordSince(Stage.SEGMENT, start);
+		//recognition is interleaved with grid fitting, so time it separately
+		long recognizeNanos = 0;
 		List<Region> hexagons = regions.stream()
 				.filter(r -> Colors.HEXAGON_BORDER_COLORS.containsKey(r.color()))
 				.collect(Collectors.toList());
@@ -77,6 +170,13 @@ public final class Effector {
 		int hexHeight = (int)Math.round(hexagons.stream()
 				.mapToInt(r -> r.boundingBox().height)
 				.average().getAsDouble());
+		this.hexSize = new Dimension(hexWidth, hexHeight);
+		List<Rectangle> hexBoxes = hexagons.stream()
+				.map(Region::boundingBox)
+				.collect(Collectors.toList());
+		this.boardRect = hexBoxes.stream()
+				.reduce(Rectangle::union).get();
+		boardRect.translate(origin.x, origin.y);
 //		System.out.println(hexWidth);
 //		System.out.println(hexHeight);
 
@@ -141,36 +241,85 @@ public final class Effector {
 
 			Rectangle exteriorBox = hex.boundingBox();
 			if (state != CellState.UNKNOWN) {
-				BufferedImage subimage = image.getSubimage(exteriorBox.x, exteriorBox.y, exteriorBox.width, exteriorBox.height);
-				recognizer.recognizeCell(subimage, state)
+				long recognizeStart = System.nanoTime();
+				//the neighbors' corners poke into our bounding box
+				List<Rectangle> neighbors = hexBoxes.stream()
+						.filter(b -> !b.equals(exteriorBox) && b.intersects(exteriorBox))
+						.collect(Collectors.toList());
+				recognizer.recognizeCell(image, exteriorBox, state, neighbors)
 						.ifPresent(i -> constraintImages.put(coordinate, i));
+				recognizeNanos += System.nanoTime() - recognizeStart;
 			}
-			//help out board-edge constraint parsing
-			for (int i = exteriorBox.x; i < exteriorBox.x + exteriorBox.width; ++i)
-				for (int j = exteriorBox.y; j < exteriorBox.y + exteriorBox.height; ++j)
-					image.setRGB(i, j, Color.WHITE.getRGB());
 		}
 
-		for (Coordinate c : cells.keySet()) {
-			if (!cells.containsKey(c.up()))
-				recognizer.recognizeBoardEdge(subimageCenteredAt(image, hexCenters.get(c).x, hexCenters.get(c).y - hexHeight, hexWidth, hexHeight))
-						.map(i -> i.pos == ConstraintPosition.TOP ? i : null)
-						.ifPresent(i -> constraintImages.put(c.up(), i));
-			if (!cells.containsKey(c.upRight()))
-				recognizer.recognizeBoardEdge(subimageCenteredAt(image, hexCenters.get(c).x + hexWidth, hexCenters.get(c).y - hexHeight/2, hexWidth, hexHeight))
-						.map(i -> i.pos == ConstraintPosition.LEFT ? i : null)
-						.ifPresent(i -> constraintImages.put(c.upRight(), i));
-			if (!cells.containsKey(c.upLeft()))
-				recognizer.recognizeBoardEdge(subimageCenteredAt(image, hexCenters.get(c).x - hexWidth, hexCenters.get(c).y - hexHeight/2, hexWidth, hexHeight))
-						.map(i -> i.pos == ConstraintPosition.RIGHT ? i : null)
-						.ifPresent(i -> constraintImages.put(c.upLeft(), i));
-		}
+		long recognizeStart = System.nanoTime();
+		recognizeBoardEdges(image, hexCenters, hexWidth, hexHeight, hexBoxes, constraintImages);
+		recognizeNanos += System.nanoTime() - recognizeStart;
+		timings.record(Stage.RECOGNIZE, recognizeNanos);
 
 		ImmutableSet.Builder<Constraint> constraints = ImmutableSet.builder();
 		for (Map.Entry<Coordinate, Recognizer.Result> e : constraintImages.entrySet())
 			constraints.add(makeConstraint(e.getKey(), e.getValue(), cells));
 
-		return new Pair<>(new Puzzle(cells, constraints.build()), hexCenters);
+		Puzzle puzzle = new Puzzle(cells, constraints.build());
+		if (origin.x != 0 || origin.y != 0)
+			hexCenters.replaceAll((c, p) -> new Region.Point(p.x + origin.x, p.y + origin.y));
+		timings.record(Stage.GRID, System.nanoTime() - gridStart - recognizeNanos);
+		return new Pair<>(puzzle, hexCenters);
+	}
+
+	/**
+	 * Finds the board-edge constraints.  The glyphs near the board are
+	 * segmented into blobs in one pass, each blob is assigned to the empty slot
+	 * next to the board whose window it's in, and each slot's blobs are matched
+	 * once, only against the orientations a constraint in that slot could have.
+	 * The hexagons are ignored, as absent hexagons' interiors are the same
+	 * dark gray as the glyphs.
+	 */
+	private static void recognizeBoardEdges(BufferedImage image, Map<Coordinate, Region.Point> hexCenters,
+			int hexWidth, int hexHeight, List<Rectangle> hexBoxes, Map<Coordinate, Recognizer.Result> constraintImages) {
+		//the windows we expect each slot's constraint in, by orientation
+		Map<Coordinate, Map<ConstraintPosition, Rectangle>> slots = new LinkedHashMap<>();
+		for (Map.Entry<Coordinate, Region.Point> e : hexCenters.entrySet()) {
+			Coordinate c = e.getKey();
+			Region.Point p = e.getValue();
+			if (!hexCenters.containsKey(c.up()))
+				slots.computeIfAbsent(c.up(), k -> new EnumMap<>(ConstraintPosition.class))
+						.put(ConstraintPosition.TOP, boxCenteredAt(p.x, p.y - hexHeight, hexWidth, hexHeight));
+			if (!hexCenters.containsKey(c.upRight()))
+				slots.computeIfAbsent(c.upRight(), k -> new EnumMap<>(ConstraintPosition.class))
+						.put(ConstraintPosition.LEFT, boxCenteredAt(p.x + hexWidth, p.y - hexHeight/2, hexWidth, hexHeight));
+			if (!hexCenters.containsKey(c.upLeft()))
+				slots.computeIfAbsent(c.upLeft(), k -> new EnumMap<>(ConstraintPosition.class))
+						.put(ConstraintPosition.RIGHT, boxCenteredAt(p.x - hexWidth, p.y - hexHeight/2, hexWidth, hexHeight));
+		}
+		if (slots.isEmpty()) return;
+		Rectangle area = slots.values().stream()
+				.flatMap(m -> m.values().stream())
+				.reduce(Rectangle::union).get()
+				.intersection(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+
+		Map<Coordinate, Rectangle> glyphs = new LinkedHashMap<>();
+		for (Rectangle blob : recognizer.findBoardEdgeGlyphs(image, area, hexBoxes)) {
+			int x = (int)blob.getCenterX(), y = (int)blob.getCenterY();
+			Coordinate best = null;
+			long bestDistance = Long.MAX_VALUE;
+			for (Map.Entry<Coordinate, Map<ConstraintPosition, Rectangle>> e : slots.entrySet())
+				for (Rectangle window : e.getValue().values())
+					if (window.contains(x, y)) {
+						long dx = (long)window.getCenterX() - x, dy = (long)window.getCenterY() - y;
+						if (dx * dx + dy * dy < bestDistance) {
+							best = e.getKey();
+							bestDistance = dx * dx + dy * dy;
+						}
+					}
+			if (best != null)
+				glyphs.merge(best, blob, Rectangle::union);
+		}
+
+		for (Map.Entry<Coordinate, Rectangle> e : glyphs.entrySet())
+			recognizer.recognizeBoardEdge(image, e.getValue(), slots.get(e.getKey()).keySet(), hexBoxes)
+					.ifPresent(i -> constraintImages.put(e.getKey(), i));
 	}
 
 	private static Constraint makeConstraint(Coordinate c, Recognizer.Result result, Map<Coordinate, CellState> grid) {
@@ -204,63 +353,209 @@ public final class Effector {
 		}
 	}
 
-	private static BufferedImage subimageCenteredAt(BufferedImage image, int x, int y, int width, int height) {
-		return image.getSubimage(x - width/2, y - height/2, width, height);
+	/**
+	 * Returns the step to sample the capture at when looking for hexagons.
+	 * Hexagon borders are about a fourteenth of the hexagon's width thick, so
+	 * sampling every sixteenth of the width of the last capture's hexagons
+	 * lands in every border.  The first capture of a puzzle is sampled at
+	 * every pixel, as boards are drawn at different scales.
+	 */
+	private int segmentationStep() {
+		if (hexSize == null) return 1;
+		return Math.max(1, Math.min(MAX_SEGMENTATION_STEP, hexSize.width / 16));
+	}
+
+	private static Rectangle boxCenteredAt(int x, int y, int width, int height) {
+		return new Rectangle(x - width/2, y - height/2, width, height);
 	}
 	//</editor-fold>
 
 	public boolean playPuzzle() {
+		//forget the last puzzle's scale (see segmentationStep())
+		hexSize = null;
 		while (true) {
-			Pair<Puzzle, Map<Coordinate, Region.Point>> p = fromImage(capture());
+			OptionalLong deadline = roundBudgetNanos == Long.MAX_VALUE ? OptionalLong.empty()
+					: OptionalLong.of(System.nanoTime() + roundBudgetNanos);
+			Rectangle frameRect = frameRect();
+			Pair<Puzzle, Map<Coordinate, Region.Point>> p = fromImage(capture(frameRect),
+					frameRect == null ? new Region.Point(0, 0) : new Region.Point(frameRect.x, frameRect.y));
 			Map<Coordinate, Region.Point> hexCenters = p.second;
 			Puzzle p1 = p.first;
+			if (recorder != null)
+				try {
+					recorder.recordPuzzle(p1);
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
 			p1.constraints().forEachOrdered(System.out::println);
-			Puzzle p2 = Deducer.deduce(p1);
+			Puzzle p2 = deduceAndClick(p1, hexCenters, deadline);
 			List<Coordinate> deductions = p2.cells()
 					.filter(c -> p2.isKnown(c) && p1.isUnknown(c))
 					.collect(Collectors.toList());
-			for (Coordinate c : deductions)
-				if (p2.isPresent(c))
-					leftClick(hexCenters.get(c));
-				else if (p2.isAbsent(c))
-					rightClick(hexCenters.get(c));
 
-			if (deductions.isEmpty())
+			if (deductions.isEmpty()) {
+				//counting can take exponential time, so give it a round's budget
+				Optional<SolutionCounter.Result> counted = SolutionCounter.countUntil(p2, System.nanoTime()
+						+ (roundBudgetNanos == Long.MAX_VALUE ? STALL_COUNT_NANOS : roundBudgetNanos));
+				if (!counted.isPresent()) {
+					System.out.println("stalled (count unavailable)");
+					return false;
+				}
+				SolutionCounter.Result count = counted.get();
+				System.out.println("stalled with " + count + (count.isUnique() ? " (unique)" : ""));
+				count.safestGuess(p2).ifPresent(g -> System.out.format("safest guess: %s %s (%.1f%% present)%n",
+						g.first, g.second, 100 * count.presentFraction(g.first)));
 				return false;
+			}
 			if (p2.isSolved())
 				return true;
+			//deduce ahead while the constraints we uncovered appear
+			speculation = Speculation.start(p2, deductions.stream().filter(p2::isAbsent)
+					.collect(Collectors.toList()), solver, deducerThread);
 			//wait for particle effects to clear
-			Uninterruptibles.sleepUninterruptibly(3, TimeUnit.SECONDS);
+			Rectangle settleRect = new Rectangle(boardRect);
+			long settleStart = System.nanoTime();
+			settleWaiter.awaitSettled(() -> screen.capture(settleRect));
+			timings.recordSince(Stage.SETTLE, settleStart);
+		}
+	}
+
+	/**
+	 * Deduces on a background thread while clicking deductions as they arrive.
+	 * If we speculated last round, its deductions are clicked first and the
+	 * deducer starts from them.
+	 * @param deadline when to stop deducing (see {@link #setRoundBudget(long,
+	 * TimeUnit)}), if there's a round budget
+	 */
+	private Puzzle deduceAndClick(Puzzle puzzle, Map<Coordinate, Region.Point> hexCenters, OptionalLong deadline) {
+		BlockingQueue<Pair<Coordinate, CellState>> queue = new LinkedBlockingQueue<>();
+		Map<Coordinate, CellState> speculated = applySpeculation(puzzle, queue);
+		Future<Puzzle> solution = deducerThread.submit(() -> {
+			long start = System.nanoTime();
+			BiConsumer<Coordinate, CellState> listener = (c, s) -> queue.add(new Pair<>(c, s));
+			try {
+				Deducer.Result result = solver.deduceUntil(puzzle, speculated, listener, deadline, null);
+				if (result.isComplete())
+					return result.puzzle();
+				Puzzle partial = result.puzzle();
+				if (speculated.isEmpty() && partial.cells().noneMatch(c -> partial.isKnown(c) && puzzle.isUnknown(c)))
+					return solver.deduce(partial, listener);
+				System.out.println("deduction stopped at the round deadline");
+				return partial;
+			} finally {
+				timings.recordSince(Stage.DEDUCE, start);
+				queue.add(DEDUCTION_DONE);
+			}
+		});
+
+		int unverified = 0;
+		long clickNanos = 0;
+		List<Pair<Coordinate, CellState>> batch = new ArrayList<>(), deductions = new ArrayList<>();
+		while (batch.isEmpty() || batch.get(batch.size() - 1) != DEDUCTION_DONE) {
+			batch.clear();
+			batch.add(Uninterruptibles.takeUninterruptibly(queue));
+			queue.drainTo(batch);
+			Map<Region.Point, CellState> clicks = new LinkedHashMap<>();
+			for (Pair<Coordinate, CellState> d : batch)
+				if (d != DEDUCTION_DONE) {
+					clicks.put(hexCenters.get(d.first), d.second);
+					deductions.add(d);
+				}
+			long clickStart = System.nanoTime();
+			unverified += clickScheduler.clickAll(clicks, hexSize);
+			clickNanos += System.nanoTime() - clickStart;
+		}
+		timings.record(Stage.CLICK, clickNanos);
+		if (unverified > 0)
+			System.out.println(unverified + " clicks not verified");
+		if (recorder != null)
+			try {
+				recorder.recordDeductions(deductions, hexCenters);
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+
+		try {
+			return Uninterruptibles.getUninterruptibly(solution);
+		} catch (ExecutionException ex) {
+			throw new RuntimeException(ex.getCause());
 		}
 	}
 
-	private BufferedImage capture() {
-		BufferedImage capture = robot.createScreenCapture(hexcellsRect);
-		Graphics2D g = capture.createGraphics();
-		g.setColor(Color.WHITE);
-		g.fillRect(0, 0, 32, 32); //cover up hexcells icon lest we think it's a hex
-		g.dispose();
-		return capture;
+	/**
+	 * Finishes last round's speculation, queueing its deductions for clicking.
+	 * @return the speculated deductions, which may be empty
+	 */
+	private Map<Coordinate, CellState> applySpeculation(Puzzle puzzle, BlockingQueue<Pair<Coordinate, CellState>> queue) {
+		if (speculation == null) return Collections.emptyMap();
+		Map<Coordinate, CellState> deductions = speculation.finish(puzzle);
+		for (Map.Entry<Coordinate, CellState> e : deductions.entrySet())
+			queue.add(new Pair<>(e.getKey(), e.getValue()));
+		timings.record(Stage.SPECULATE, speculation.nanos());
+		speculation = null;
+		return deductions;
 	}
 
-	private void leftClick(Region.Point p) {
-		int x = p.x + hexcellsRect.x, y = p.y + hexcellsRect.y;
-		if (!hexcellsRect.contains(x, y)) throw new RuntimeException();
-		robot.mouseMove(x, y);
-		robot.mousePress(InputEvent.BUTTON1_DOWN_MASK);
-		robot.mouseRelease(InputEvent.BUTTON1_DOWN_MASK);
+	/**
+	 * Returns the part of the window to capture for parsing: the board, plus
+	 * room for its board-edge constraints, once we know where it is, or null
+	 * for the whole window.  The board doesn't move during a puzzle.
+	 */
+	private Rectangle frameRect() {
+		if (boardRect == null || hexSize == null || windowSize == null) return null;
+		//board-edge constraint windows reach a hexagon beyond the hexagons
+		Rectangle rect = new Rectangle(boardRect);
+		rect.grow(hexSize.width + CROP_SLACK, hexSize.height + CROP_SLACK);
+		return rect.intersection(new Rectangle(windowSize));
 	}
 
-	private void rightClick(Region.Point p) {
-		int x = p.x + hexcellsRect.x, y = p.y + hexcellsRect.y;
-		if (!hexcellsRect.contains(x, y)) throw new RuntimeException();
-		robot.mouseMove(x, y);
-		robot.mousePress(InputEvent.BUTTON3_DOWN_MASK);
-		robot.mouseRelease(InputEvent.BUTTON3_DOWN_MASK);
+	/**
+	 * Captures a frame for parsing.
+	 * @param rect the part of the window to capture, or null for all of it
+	 */
+	private BufferedImage capture(Rectangle rect) {
+		long start = System.nanoTime();
+		frame = screen.captureFrame(rect, frame);
+		if (rect == null)
+			windowSize = new Dimension(frame.getWidth(), frame.getHeight());
+		timings.recordSince(Stage.CAPTURE, start);
+		if (recorder != null)
+			try {
+				recorder.recordFrame(frame, rect == null ? 0 : rect.x, rect == null ? 0 : rect.y);
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		return frame;
 	}
 
+	/**
+	 * Plays the puzzle on screen, then prints the per-stage latencies (or
+	 * writes them to the given file).  With -record, the session is also
+	 * recorded for {@link ReplayScreen}; with -budget, each round's deduction
+	 * stops that many milliseconds after its capture.
+	 * @param args [-record session file] [-budget millis] [timings file]
+	 */
 	public static void main(String[] args) throws Throwable {
-		Effector e = new Effector();
-		System.out.println(e.playPuzzle());
+		Effector e = new Effector(new RobotScreen());
+		int arg = 0;
+		SessionRecorder recorder = null;
+		for (; arg + 1 < args.length && args[arg].startsWith("-"); arg += 2)
+			if (args[arg].equals("-record")) {
+				recorder = new SessionRecorder(Paths.get(args[arg + 1]));
+				e.recordTo(recorder);
+			} else if (args[arg].equals("-budget"))
+				e.setRoundBudget(Long.parseLong(args[arg + 1]), TimeUnit.MILLISECONDS);
+			else
+				throw new IllegalArgumentException(args[arg]);
+		try {
+			System.out.println(e.playPuzzle());
+		} finally {
+			if (recorder != null)
+				recorder.close();
+		}
+		if (args.length > arg)
+			e.timings().writeTo(Paths.get(args[arg]));
+		else
+			System.out.print(e.timings().report());
 	}
 }
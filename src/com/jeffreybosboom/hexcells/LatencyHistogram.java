@@ -0,0 +1,88 @@
+package com.jeffreybosboom.hexcells;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in nanoseconds, safe to record into from several
+ * threads.  Buckets are log-linear: each power of two is split into eight
+ * buckets, so percentiles are reported to within 12.5% while the histogram
+ * stays a fixed, small size however long the latencies get.  The maximum is
+ * exact.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/19/2026
+ */
+public final class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 3, SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong(), total = new AtomicLong(), max = new AtomicLong();
+
+	public void record(long nanos) {
+		checkArgument(nanos >= 0, nanos);
+		counts.incrementAndGet(bucket(nanos));
+		count.incrementAndGet();
+		total.addAndGet(nanos);
+		max.accumulateAndGet(nanos, Math::max);
+	}
+
+	private static int bucket(long nanos) {
+		if (nanos < SUB_BUCKETS) return (int)nanos;
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int subBucket = (int)(nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * Returns the largest value that falls in the given bucket.
+	 */
+	private static long bucketMax(int bucket) {
+		if (bucket < SUB_BUCKETS) return bucket;
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long lower = (long)(SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+		return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+
+	public long count() {
+		return count.get();
+	}
+
+	public long max() {
+		return max.get();
+	}
+
+	public double mean() {
+		long n = count.get();
+		return n == 0 ? 0 : total.get() / (double)n;
+	}
+
+	/**
+	 * Returns the given percentile by the nearest-rank method, rounded up to
+	 * its bucket's upper bound (but never more than the maximum), or 0 if
+	 * nothing has been recorded.
+	 * @param percentile the percentile, in (0, 100]
+	 * @return the percentile, in nanoseconds
+	 */
+	public long percentile(double percentile) {
+		checkArgument(0 < percentile && percentile <= 100, percentile);
+		long[] snapshot = new long[BUCKETS];
+		long n = 0;
+		for (int i = 0; i < BUCKETS; ++i)
+			n += snapshot[i] = counts.get(i);
+		if (n == 0) return 0;
+		long rank = Math.max((long)Math.ceil(percentile / 100 * n), 1), seen = 0;
+		for (int i = 0; i < BUCKETS; ++i) {
+			seen += snapshot[i];
+			if (seen >= rank)
+				return Math.min(bucketMax(i), max());
+		}
+		return max();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("n=%d p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+				count(), percentile(50) / 1e6, percentile(99) / 1e6, max() / 1e6);
+	}
+}
@@ -3,8 +3,10 @@ package com.jeffreybosboom.hexcells;
 import static com.google.common.base.Preconditions.checkState;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
@@ -15,9 +17,22 @@ import java.util.stream.Stream;
 public final class Puzzle {
 	private final ImmutableMap<Coordinate, CellState> cells;
 	private final ImmutableSet<Constraint> constraints;
+	//lazily computed; shared with refinements of this puzzle
+	private volatile BoardIndex index;
+	/**
+	 * The constraints whose regions still have unknown cells, as a bitmask over
+	 * constraint indices in the BoardIndex.  Lazily computed if not inherited
+	 * from the puzzle this one was refined from.  Never modified.
+	 */
+	private volatile long[] active;
 	public Puzzle(Map<Coordinate, CellState> cells, Set<Constraint> constraints) {
-		this.cells = ImmutableMap.copyOf(cells);
-		this.constraints = ImmutableSet.copyOf(constraints);
+		this(ImmutableMap.copyOf(cells), ImmutableSet.copyOf(constraints), null, null);
+	}
+	private Puzzle(ImmutableMap<Coordinate, CellState> cells, ImmutableSet<Constraint> constraints, BoardIndex index, long[] active) {
+		this.cells = cells;
+		this.constraints = constraints;
+		this.index = index;
+		this.active = active;
 	}
 
 	public Stream<Coordinate> cells() {
@@ -29,6 +44,28 @@ public final class Puzzle {
 	public Stream<Constraint> constraints() {
 		return constraints.stream();
 	}
+	/**
+	 * Returns the constraints whose regions still contain unknown cells.
+	 * Constraints are discharged (no longer active) once all the cells in
+	 * their region are known, as they can't lead to further deductions.
+	 */
+	public Stream<Constraint> activeConstraints() {
+		BoardIndex index = index();
+		long[] active = activeMask();
+		return IntStream.range(0, index.constraintCount())
+				.filter(i -> (active[i >>> 6] & (1L << i)) != 0)
+				.mapToObj(index::constraint);
+	}
+	/**
+	 * Returns the active constraints whose regions contain the given cell.
+	 */
+	public Stream<Constraint> constraintsOf(Coordinate cell) {
+		BoardIndex index = index();
+		long[] active = activeMask();
+		return Arrays.stream(index.constraintsOf(index.indexOf(cell)))
+				.filter(i -> (active[i >>> 6] & (1L << i)) != 0)
+				.mapToObj(index::constraint);
+	}
 
 	//for Stream.filter
 	public boolean isPresent(Coordinate c) {
@@ -48,18 +85,74 @@ public final class Puzzle {
 		return cells().allMatch(this::isKnown);
 	}
 
+	/**
+	 * Returns this puzzle's cells and constraints compiled for mask-based
+	 * rules.
+	 */
+	public BoardIndex index() {
+		return index(null);
+	}
+
+	/**
+	 * Returns this puzzle's index, deriving it from the given index of an
+	 * earlier puzzle (see {@link BoardIndex#reindex}) if this puzzle hasn't
+	 * been indexed yet.
+	 * @param earlier an index to derive from, or null
+	 */
+	BoardIndex index(BoardIndex earlier) {
+		BoardIndex i = index;
+		if (i == null)
+			index = i = earlier == null ? new BoardIndex(cells.keySet(), constraints)
+					: earlier.reindex(cells.keySet(), constraints);
+		return i;
+	}
+
+	/**
+	 * Returns the active constraints as a bitmask over constraint indices in
+	 * {@link #index()}.  The returned array must not be modified.
+	 */
+	long[] activeMask() {
+		long[] a = active;
+		if (a == null) {
+			BoardIndex index = index();
+			a = new long[BoardIndex.wordsFor(index.constraintCount())];
+			for (int i = 0; i < index.constraintCount(); ++i)
+				for (Coordinate c : index.constraint(i).region())
+					if (isUnknown(c)) {
+						a[i >>> 6] |= 1L << i;
+						break;
+					}
+			active = a;
+		}
+		return a;
+	}
+
 	public Puzzle refine(Coordinate cell, CellState kind) {
 		checkState(isUnknown(cell));
 		ImmutableMap.Builder<Coordinate, CellState> newCells = ImmutableMap.builder();
 		cells().filter(c -> !c.equals(cell))
 				.forEach(c -> newCells.put(c, at(c)));
 		newCells.put(cell, kind);
-		return new Puzzle(newCells.build(), constraints);
+		ImmutableMap<Coordinate, CellState> refined = newCells.build();
+
+		BoardIndex index = index();
+		long[] newActive = activeMask().clone();
+		for (int i : index.constraintsOf(index.indexOf(cell)))
+			if (index.constraint(i).region().stream().allMatch(c -> refined.get(c) != CellState.UNKNOWN))
+				newActive[i >>> 6] &= ~(1L << i);
+		return new Puzzle(refined, constraints, index, newActive);
+	}
+
+	/**
+	 * Returns a puzzle with the same cells and constraints as this one, but
+	 * with the given cell states and active constraints.
+	 */
+	Puzzle withCells(ImmutableMap<Coordinate, CellState> newCells, long[] newActive) {
+		assert newCells.keySet().equals(cells.keySet());
+		return new Puzzle(newCells, constraints, index(), newActive);
 	}
 
 	public Puzzle constrain(Constraint constraint) {
 		return new Puzzle(cells, ImmutableSet.<Constraint>builder().addAll(constraints).add(constraint).build());
 	}
-
-	//TODO: discharge constraints when satisfied?
 }
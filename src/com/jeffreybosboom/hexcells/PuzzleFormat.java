@@ -0,0 +1,677 @@
+package com.jeffreybosboom.hexcells;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads and writes puzzles.
+ * <p>
+ * The text format has one line per cell or constraint:
+ * <pre>
+ * puzzle
+ * cell -1,1,0 unknown
+ * cell 0,1,-1 present
+ * cell-constraint 0,0,0 {2} 0,1,-1 1,0,-1 1,-1,0
+ * axis-constraint x z -3- 0,2,-2 0,1,-1 0,0,0 0,-1,1
+ * constraint 4 0,2,-2 0,1,-1 1,0,-1 ...
+ * end
+ * </pre>
+ * Targets are written as they're shown in the game: {@code 2} for a plain
+ * target, {@code {2}} for contiguous and {@code -2-} for discontiguous
+ * (cell and axis constraints only, as plain constraints have no order for
+ * their cells to be contiguous in).  Axis constraints name their axis and the axis they're sorted along.  Blank lines
+ * and lines starting with {@code #} are ignored.  Written puzzles are
+ * canonical: cells are sorted by x then z, constraints by kind then position,
+ * and regions in neighbor order (cell constraints), axis order (axis
+ * constraints) or coordinate order, so equal puzzles are written identically
+ * and diffs between puzzles are minimal.
+ * <p>
+ * The binary format is for large corpora.  A file is the magic number
+ * {@link #BINARY_MAGIC} followed by puzzles, each written as varints: the cell
+ * count; each cell's zigzagged x and z with its state; the constraint count;
+ * and each constraint's kind and flags, target, center or axes, and region as
+ * indices into the cell list.  Puzzles can be read one at a time, so corpora
+ * can be streamed.
+ * <p>
+ * We can also import Hexcells Infinite level strings (as shared by SixCells and
+ * the level editor), which are 33 rows of 33 two-character cells on a
+ * doubled-height grid (a hex's neighbors are two rows up and down and one row
+ * up and down in the adjacent columns).  The first character is {@code .} for
+ * no cell, {@code o}/{@code O} for a hidden/revealed black (absent) cell,
+ * {@code x}/{@code X} for a hidden/revealed blue (present) cell, or
+ * {@code \ | /} for a column hint pointing in that direction; the second is
+ * {@code .} for no number, {@code +} for a number, {@code c} for a
+ * {contiguous} number or {@code n} for a -discontiguous- number.  Blue cells'
+ * numbers count the blue cells within radius 2.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/19/2026
+ */
+public final class PuzzleFormat {
+	private PuzzleFormat() {}
+
+	/**
+	 * Creates a plain constraint, rejecting contiguity: its region has no
+	 * order to be contiguous in, so the rules can't use it.
+	 * @param where what we're reading, for the error message
+	 * @param number which of those we're reading
+	 */
+	private static Constraint plainConstraint(List<Coordinate> region, int target, boolean contiguous, boolean discontiguous, String where, int number) {
+		checkArgument(!contiguous && !discontiguous, "%s %s: contiguity on a plain constraint", where, number);
+		return new Constraint(region, target, contiguous, discontiguous);
+	}
+
+	//<editor-fold defaultstate="collapsed" desc="Text">
+	public static void write(Puzzle puzzle, Appendable out) throws IOException {
+		out.append("puzzle\n");
+		for (Coordinate c : sortedCells(puzzle)) {
+			out.append("cell ");
+			append(c, out);
+			out.append(' ').append(STATE_NAMES[puzzle.at(c).ordinal()]).append('\n');
+		}
+		for (Constraint c : sortedConstraints(puzzle)) {
+			if (c instanceof CellConstraint) {
+				out.append("cell-constraint ");
+				append(((CellConstraint)c).center(), out);
+			} else if (c instanceof AxisConstraint)
+				out.append("axis-constraint ")
+						.append(axisName(((AxisConstraint)c).axisExtractor())).append(' ')
+						.append(axisName(((AxisConstraint)c).sortAxisExtractor()));
+			else
+				out.append("constraint");
+			out.append(' ');
+			if (c.isContiguous())
+				out.append('{').append(Integer.toString(c.target())).append('}');
+			else if (c.isDiscontiguous())
+				out.append('-').append(Integer.toString(c.target())).append('-');
+			else
+				out.append(Integer.toString(c.target()));
+			for (Coordinate r : canonicalRegion(c)) {
+				out.append(' ');
+				append(r, out);
+			}
+			out.append('\n');
+		}
+		out.append("end\n");
+	}
+
+	public static String toString(Puzzle puzzle) {
+		StringBuilder sb = new StringBuilder();
+		try {
+			write(puzzle, sb);
+		} catch (IOException ex) {
+			throw new AssertionError(ex);
+		}
+		return sb.toString();
+	}
+
+	private static final String[] STATE_NAMES = Arrays.stream(CellState.values())
+			.map(s -> s.name().toLowerCase()).toArray(String[]::new);
+
+	private static void append(Coordinate c, Appendable out) throws IOException {
+		out.append(Integer.toString(c.x())).append(',')
+				.append(Integer.toString(c.y())).append(',')
+				.append(Integer.toString(c.z()));
+	}
+
+	/**
+	 * Returns a lazy stream of the puzzles in the given reader.  The reader is
+	 * read as the stream is consumed, so arbitrarily large files can be
+	 * streamed; the caller remains responsible for closing it.
+	 */
+	public static Stream<Puzzle> read(BufferedReader in) {
+		return stream(new TextReader(in));
+	}
+
+	private static final class TextReader implements Iterator<Puzzle> {
+		private final BufferedReader in;
+		private int lineNumber = 0;
+		private Puzzle next;
+		//the line being parsed and our position in it
+		private String line;
+		private int pos;
+		TextReader(BufferedReader in) {
+			this.in = in;
+		}
+		@Override
+		public boolean hasNext() {
+			if (next == null)
+				next = readPuzzle();
+			return next != null;
+		}
+		@Override
+		public Puzzle next() {
+			if (!hasNext()) throw new NoSuchElementException();
+			Puzzle p = next;
+			next = null;
+			return p;
+		}
+		private boolean readLine() {
+			try {
+				do {
+					line = in.readLine();
+					++lineNumber;
+				} while (line != null && (line.trim().isEmpty() || line.startsWith("#")));
+				pos = 0;
+				return line != null;
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		}
+		private Puzzle readPuzzle() {
+			if (!readLine()) return null;
+			checkArgument(word().equals("puzzle"), "line %s: expected puzzle: %s", lineNumber, line);
+			Map<Coordinate, CellState> cells = new LinkedHashMap<>();
+			Set<Constraint> constraints = new LinkedHashSet<>();
+			while (true) {
+				checkArgument(readLine(), "line %s: unexpected end of input", lineNumber);
+				try {
+					String type = word();
+					if (type.equals("end")) break;
+					switch (type) {
+						case "cell":
+							Coordinate c = coordinate();
+							checkArgument(cells.put(c, CellState.valueOf(word().toUpperCase())) == null, "duplicate cell");
+							break;
+						case "cell-constraint":
+							Coordinate center = coordinate();
+							constraints.add(constraint(null, null, center));
+							break;
+						case "axis-constraint":
+							ToIntFunction<Coordinate> axis = axis(word()), sortAxis = axis(word());
+							constraints.add(constraint(axis, sortAxis, null));
+							break;
+						case "constraint":
+							constraints.add(constraint(null, null, null));
+							break;
+						default:
+							throw new IllegalArgumentException("unknown line type");
+					}
+					checkArgument(!hasMoreTokens(), "trailing garbage");
+				} catch (RuntimeException ex) {
+					throw new IllegalArgumentException(String.format("line %d: %s", lineNumber, line), ex);
+				}
+			}
+			return new Puzzle(cells, constraints);
+		}
+
+		private Constraint constraint(ToIntFunction<Coordinate> axis, ToIntFunction<Coordinate> sortAxis, Coordinate center) {
+			skipSpaces();
+			boolean contiguous = false, discontiguous = false;
+			if (line.charAt(pos) == '{') {
+				contiguous = true;
+				++pos;
+			} else if (line.charAt(pos) == '-') {
+				discontiguous = true;
+				++pos;
+			}
+			int target = integer();
+			if (contiguous) expect('}');
+			if (discontiguous) expect('-');
+			List<Coordinate> region = new ArrayList<>(6);
+			while (hasMoreTokens())
+				region.add(coordinate());
+			if (center != null)
+				return new CellConstraint(center, region, target, contiguous, discontiguous);
+			if (axis != null)
+				return new AxisConstraint(axis, sortAxis, region, target, contiguous, discontiguous);
+			return plainConstraint(region, target, contiguous, discontiguous, "line", lineNumber);
+		}
+
+		private void skipSpaces() {
+			while (pos < line.length() && Character.isWhitespace(line.charAt(pos)))
+				++pos;
+		}
+		private boolean hasMoreTokens() {
+			skipSpaces();
+			return pos < line.length();
+		}
+		private String word() {
+			skipSpaces();
+			int start = pos;
+			while (pos < line.length() && !Character.isWhitespace(line.charAt(pos)))
+				++pos;
+			return line.substring(start, pos);
+		}
+		private void expect(char c) {
+			checkArgument(pos < line.length() && line.charAt(pos) == c, "expected %s at %s", c, pos);
+			++pos;
+		}
+		private int integer() {
+			boolean negative = pos < line.length() && line.charAt(pos) == '-';
+			if (negative) ++pos;
+			int start = pos, value = 0;
+			for (; pos < line.length() && '0' <= line.charAt(pos) && line.charAt(pos) <= '9'; ++pos)
+				value = value * 10 + (line.charAt(pos) - '0');
+			checkArgument(pos > start, "expected integer at %s", start);
+			return negative ? -value : value;
+		}
+		private Coordinate coordinate() {
+			skipSpaces();
+			int x = integer();
+			expect(',');
+			int y = integer();
+			expect(',');
+			int z = integer();
+			return Coordinate.at(x, y, z);
+		}
+	}
+	//</editor-fold>
+
+	//<editor-fold defaultstate="collapsed" desc="Binary">
+	/**
+	 * The first four bytes of a binary puzzle file.
+	 */
+	public static final int BINARY_MAGIC = 0x48584231; //"HXB1"
+	private static final int KIND_PLAIN = 0, KIND_CELL = 1, KIND_AXIS = 2;
+	private static final int FLAG_CONTIGUOUS = 1 << 2, FLAG_DISCONTIGUOUS = 1 << 3;
+
+	public static void writeBinaryHeader(OutputStream out) throws IOException {
+		for (int shift = 24; shift >= 0; shift -= 8)
+			out.write(BINARY_MAGIC >>> shift);
+	}
+
+	/**
+	 * Writes the given puzzle in the binary format.  Call
+	 * {@link #writeBinaryHeader(OutputStream)} once before the first puzzle.
+	 * The stream should be buffered.
+	 */
+	public static void writeBinary(Puzzle puzzle, OutputStream out) throws IOException {
+		List<Coordinate> cells = sortedCells(puzzle);
+		Map<Coordinate, Integer> indices = new HashMap<>(cells.size() * 2);
+		writeVarint(cells.size(), out);
+		for (Coordinate c : cells) {
+			indices.put(c, indices.size());
+			writeVarint(zigzag(c.x()), out);
+			writeVarint(zigzag(c.z()), out);
+			out.write(puzzle.at(c).ordinal());
+		}
+		List<Constraint> constraints = sortedConstraints(puzzle);
+		writeVarint(constraints.size(), out);
+		for (Constraint c : constraints) {
+			int header = c instanceof CellConstraint ? KIND_CELL : c instanceof AxisConstraint ? KIND_AXIS : KIND_PLAIN;
+			if (c.isContiguous()) header |= FLAG_CONTIGUOUS;
+			if (c.isDiscontiguous()) header |= FLAG_DISCONTIGUOUS;
+			if (c instanceof AxisConstraint)
+				header |= (axisNumber(((AxisConstraint)c).axisExtractor()) << 4)
+						| (axisNumber(((AxisConstraint)c).sortAxisExtractor()) << 6);
+			out.write(header);
+			writeVarint(c.target(), out);
+			if (c instanceof CellConstraint) {
+				Coordinate center = ((CellConstraint)c).center();
+				writeVarint(zigzag(center.x()), out);
+				writeVarint(zigzag(center.z()), out);
+			}
+			List<Coordinate> region = canonicalRegion(c);
+			writeVarint(region.size(), out);
+			for (Coordinate r : region) {
+				Integer index = indices.get(r);
+				checkArgument(index != null, "%s not in puzzle", r);
+				writeVarint(index, out);
+			}
+		}
+	}
+
+	/**
+	 * Returns a lazy stream of the puzzles in the given binary input, which
+	 * must start with the magic number.  The input is read as the stream is
+	 * consumed; the caller remains responsible for closing it.
+	 */
+	public static Stream<Puzzle> readBinary(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in instanceof BufferedInputStream ? in : new BufferedInputStream(in));
+		int magic = data.readInt();
+		checkArgument(magic == BINARY_MAGIC, "bad magic number %s", Integer.toHexString(magic));
+		return stream(new Iterator<Puzzle>() {
+			private Puzzle next;
+			@Override
+			public boolean hasNext() {
+				if (next == null)
+					try {
+						next = readBinaryPuzzle(data);
+					} catch (IOException ex) {
+						throw new UncheckedIOException(ex);
+					}
+				return next != null;
+			}
+			@Override
+			public Puzzle next() {
+				if (!hasNext()) throw new NoSuchElementException();
+				Puzzle p = next;
+				next = null;
+				return p;
+			}
+		});
+	}
+
+	/**
+	 * Reads one binary puzzle (with no magic number before it), or returns
+	 * null at the end of the input.
+	 */
+	static Puzzle readBinaryPuzzle(DataInputStream in) throws IOException {
+		int first = in.read();
+		if (first == -1) return null;
+		int cellCount = readVarint(first, in);
+		Coordinate[] cells = new Coordinate[cellCount];
+		Map<Coordinate, CellState> states = new LinkedHashMap<>(cellCount * 2);
+		CellState[] stateValues = CellState.values();
+		for (int i = 0; i < cellCount; ++i) {
+			int x = unzigzag(readVarint(in)), z = unzigzag(readVarint(in));
+			cells[i] = Coordinate.at(x, -x - z, z);
+			states.put(cells[i], stateValues[in.readUnsignedByte()]);
+		}
+		int constraintCount = readVarint(in);
+		Set<Constraint> constraints = new LinkedHashSet<>(constraintCount * 2);
+		for (int i = 0; i < constraintCount; ++i) {
+			int header = in.readUnsignedByte();
+			int target = readVarint(in);
+			Coordinate center = null;
+			if ((header & 3) == KIND_CELL) {
+				int x = unzigzag(readVarint(in)), z = unzigzag(readVarint(in));
+				center = Coordinate.at(x, -x - z, z);
+			}
+			int regionSize = readVarint(in);
+			List<Coordinate> region = new ArrayList<>(regionSize);
+			for (int j = 0; j < regionSize; ++j)
+				region.add(cells[readVarint(in)]);
+			boolean contiguous = (header & FLAG_CONTIGUOUS) != 0, discontiguous = (header & FLAG_DISCONTIGUOUS) != 0;
+			switch (header & 3) {
+				case KIND_PLAIN:
+					constraints.add(plainConstraint(region, target, contiguous, discontiguous, "constraint", i));
+					break;
+				case KIND_CELL:
+					constraints.add(new CellConstraint(center, region, target, contiguous, discontiguous));
+					break;
+				case KIND_AXIS:
+					constraints.add(new AxisConstraint(AXES.get((header >>> 4) & 3), AXES.get((header >>> 6) & 3),
+							region, target, contiguous, discontiguous));
+					break;
+				default:
+					throw new IllegalArgumentException("bad constraint header "+header);
+			}
+		}
+		return new Puzzle(states, constraints);
+	}
+
+	static void writeVarint(int value, OutputStream out) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	static int readVarint(DataInputStream in) throws IOException {
+		int first = in.read();
+		if (first == -1) throw new EOFException();
+		return readVarint(first, in);
+	}
+
+	private static int readVarint(int first, DataInputStream in) throws IOException {
+		int value = first & 0x7F;
+		for (int shift = 7, b = first; (b & 0x80) != 0; shift += 7) {
+			checkArgument(shift < 32, "varint too long");
+			b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+		}
+		return value;
+	}
+
+	static int zigzag(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+
+	static int unzigzag(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+	//</editor-fold>
+
+	//<editor-fold defaultstate="collapsed" desc="Level strings">
+	private static final int LEVEL_SIZE = 33;
+
+	/**
+	 * Imports a Hexcells Infinite level string.  Any header lines (format
+	 * version, title, author, description) before the 33 grid rows are
+	 * ignored.  The returned puzzle is the level's starting position: revealed
+	 * cells are known, and the numbers on revealed cells and column hints
+	 * become constraints.
+	 */
+	public static Puzzle readLevel(String level) {
+		List<String> lines = Arrays.stream(level.split("\r?\n"))
+				.filter(l -> !l.isEmpty())
+				.collect(Collectors.toList());
+		checkArgument(lines.size() >= LEVEL_SIZE, "level has %s lines", lines.size());
+		List<String> rows = lines.subList(lines.size() - LEVEL_SIZE, lines.size());
+		for (String row : rows)
+			checkArgument(row.length() == 2 * LEVEL_SIZE, "bad level row: %s", row);
+
+		Map<Coordinate, Character> kinds = new LinkedHashMap<>(), numbers = new HashMap<>();
+		for (int row = 0; row < LEVEL_SIZE; ++row)
+			for (int col = 0; col < LEVEL_SIZE; ++col) {
+				char kind = rows.get(row).charAt(2 * col), number = rows.get(row).charAt(2 * col + 1);
+				if (kind == '.') continue;
+				checkArgument("oOxX\\|/".indexOf(kind) != -1 && ".+cn".indexOf(number) != -1,
+						"bad level cell at row %s column %s: %s%s", row, col, kind, number);
+				//blue cells count a radius, which has no order to be contiguous in
+				checkArgument((kind != 'X' && kind != 'x') || number == '+' || number == '.',
+						"contiguity on a blue cell at row %s column %s: %s%s", row, col, kind, number);
+				checkArgument((row + col) % 2 == 0, "cell off the grid at row %s column %s", row, col);
+				//doubled-height offset to cube coordinates
+				int x = col, z = (row - col) / 2;
+				Coordinate c = Coordinate.at(x, -x - z, z);
+				kinds.put(c, kind);
+				numbers.put(c, number);
+			}
+
+		Map<Coordinate, CellState> cells = new LinkedHashMap<>();
+		kinds.forEach((c, kind) -> {
+			if (kind == 'o' || kind == 'x') cells.put(c, CellState.UNKNOWN);
+			else if (kind == 'O') cells.put(c, CellState.ABSENT);
+			else if (kind == 'X') cells.put(c, CellState.PRESENT);
+		});
+		Set<Constraint> constraints = new LinkedHashSet<>();
+		kinds.forEach((c, kind) -> {
+			char number = numbers.get(c);
+			if (number == '.') return;
+			boolean contiguous = number == 'c', discontiguous = number == 'n';
+			List<Coordinate> region;
+			if (kind == 'O')
+				region = c.neighbors().filter(cells::containsKey).collect(Collectors.toList());
+			else if (kind == 'X') {
+				//all cells within radius 2
+				region = cells.keySet().stream()
+						.filter(d -> Math.max(Math.abs(d.x() - c.x()), Math.max(Math.abs(d.y() - c.y()), Math.abs(d.z() - c.z()))) <= 2)
+						.filter(d -> !d.equals(c))
+						.collect(Collectors.toList());
+			} else if (kind == '|' || kind == '\\' || kind == '/') {
+				region = new ArrayList<>();
+				//Lines can have gaps, so walk to the edge of the grid.
+				for (Coordinate d = step(c, kind); Math.abs(d.x()) <= 2 * LEVEL_SIZE && Math.abs(d.z()) <= 2 * LEVEL_SIZE; d = step(d, kind))
+					if (cells.containsKey(d))
+						region.add(d);
+			} else
+				return; //hidden cells' numbers aren't visible yet
+			int target = (int)region.stream().filter(d -> kinds.get(d) == 'x' || kinds.get(d) == 'X').count();
+			if (kind == 'O')
+				constraints.add(new CellConstraint(c, region, target, contiguous, discontiguous));
+			else if (kind == 'X')
+				constraints.add(new Constraint(region, target, contiguous, discontiguous));
+			else if (kind == '|')
+				constraints.add(new AxisConstraint(Coordinate::x, Coordinate::z, region, target, contiguous, discontiguous));
+			else if (kind == '\\')
+				constraints.add(new AxisConstraint(Coordinate::z, Coordinate::x, region, target, contiguous, discontiguous));
+			else
+				constraints.add(new AxisConstraint(Coordinate::y, Coordinate::z, region, target, contiguous, discontiguous));
+		});
+		return new Puzzle(cells, constraints);
+	}
+
+	private static Coordinate step(Coordinate c, char hint) {
+		return hint == '|' ? c.down() : hint == '\\' ? c.downRight() : c.downLeft();
+	}
+	//</editor-fold>
+
+	//<editor-fold defaultstate="collapsed" desc="Canonical order">
+	private static final Comparator<Coordinate> COORDINATE_ORDER =
+			Comparator.comparingInt(Coordinate::x).thenComparingInt(Coordinate::z);
+
+	private static List<Coordinate> sortedCells(Puzzle puzzle) {
+		return puzzle.cells().sorted(COORDINATE_ORDER).collect(Collectors.toList());
+	}
+
+	private static List<Constraint> sortedConstraints(Puzzle puzzle) {
+		return puzzle.constraints()
+				.sorted(Comparator.comparingInt(PuzzleFormat::kindOrder)
+						.thenComparing(PuzzleFormat::position, COORDINATE_ORDER)
+						.thenComparingInt(Constraint::target)
+						.thenComparing(c -> canonicalRegion(c).toString()))
+				.collect(Collectors.toList());
+	}
+
+	private static int kindOrder(Constraint c) {
+		if (c instanceof CellConstraint) return 0;
+		if (c instanceof AxisConstraint)
+			return 1 + axisNumber(((AxisConstraint)c).axisExtractor());
+		return 4;
+	}
+
+	private static Coordinate position(Constraint c) {
+		if (c instanceof CellConstraint) return ((CellConstraint)c).center();
+		List<Coordinate> region = canonicalRegion(c);
+		return region.isEmpty() ? Coordinate.at(0, 0, 0) : region.get(0);
+	}
+
+	private static List<Coordinate> canonicalRegion(Constraint c) {
+		if (c instanceof CellConstraint) {
+			List<Coordinate> neighbors = ((CellConstraint)c).center().neighbors().collect(Collectors.toList());
+			if (neighbors.containsAll(c.region()))
+				return neighbors.stream().filter(c.region()::contains).collect(Collectors.toList());
+		} else if (c instanceof AxisConstraint)
+			return c.region().stream()
+					.sorted(Comparator.comparingInt(((AxisConstraint)c).sortAxisExtractor()).thenComparing(COORDINATE_ORDER))
+					.collect(Collectors.toList());
+		return c.region().stream().sorted(COORDINATE_ORDER).collect(Collectors.toList());
+	}
+
+	private static final List<ToIntFunction<Coordinate>> AXES = Arrays.asList(Coordinate::x, Coordinate::y, Coordinate::z);
+	private static final String AXIS_NAMES = "xyz";
+	//Axis extractors are arbitrary functions, so find out which one we have.
+	private static final Coordinate AXIS_PROBE = Coordinate.at(1, 2, -3);
+	private static int axisNumber(ToIntFunction<Coordinate> extractor) {
+		int value = extractor.applyAsInt(AXIS_PROBE);
+		if (value == AXIS_PROBE.x()) return 0;
+		if (value == AXIS_PROBE.y()) return 1;
+		if (value == AXIS_PROBE.z()) return 2;
+		throw new IllegalArgumentException("not an axis extractor: "+extractor);
+	}
+
+	private static String axisName(ToIntFunction<Coordinate> extractor) {
+		return String.valueOf(AXIS_NAMES.charAt(axisNumber(extractor)));
+	}
+
+	private static ToIntFunction<Coordinate> axis(String name) {
+		checkArgument(name.length() == 1 && AXIS_NAMES.contains(name), "bad axis: %s", name);
+		return AXES.get(AXIS_NAMES.indexOf(name));
+	}
+	//</editor-fold>
+
+	private static Stream<Puzzle> stream(Iterator<Puzzle> iterator) {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+				Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+
+	/**
+	 * Opens a file of puzzles in either format, or a level string, detecting
+	 * which from its first bytes.  The stream must be closed.
+	 */
+	public static Stream<Puzzle> open(Path path) throws IOException {
+		BufferedInputStream in = new BufferedInputStream(Files.newInputStream(path), 1 << 16);
+		try {
+			in.mark(4);
+			int magic = 0;
+			for (int i = 0; i < 4; ++i)
+				magic = (magic << 8) | (in.read() & 0xFF);
+			in.reset();
+			if (magic == BINARY_MAGIC)
+				return readBinary(in).onClose(() -> closeQuietly(in));
+			BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+			reader.mark(64);
+			String firstLine = reader.readLine();
+			reader.reset();
+			if (firstLine != null && firstLine.startsWith("Hexcells level")) {
+				String level = reader.lines().collect(Collectors.joining("\n"));
+				reader.close();
+				return Stream.of(readLevel(level));
+			}
+			return read(reader).onClose(() -> closeQuietly(reader));
+		} catch (IOException | RuntimeException ex) {
+			in.close();
+			throw ex;
+		}
+	}
+
+	private static void closeQuietly(Closeable c) {
+		try {
+			c.close();
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	/**
+	 * Converts puzzle files to text or binary.
+	 * <p>
+	 * Usage: {@code PuzzleFormat (text|binary) output input...}
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3 || !(args[0].equals("text") || args[0].equals("binary"))) {
+			System.err.println("usage: PuzzleFormat (text|binary) output input...");
+			System.exit(2);
+		}
+		boolean binary = args[0].equals("binary");
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(Paths.get(args[1])), 1 << 16);
+				Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+			if (binary)
+				writeBinaryHeader(out);
+			for (int i = 2; i < args.length; ++i)
+				try (Stream<Puzzle> puzzles = open(Paths.get(args[i]))) {
+					for (Iterator<Puzzle> it = puzzles.iterator(); it.hasNext();)
+						if (binary)
+							writeBinary(it.next(), out);
+						else
+							write(it.next(), writer);
+				}
+		}
+	}
+}
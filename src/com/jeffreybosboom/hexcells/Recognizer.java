@@ -1,23 +1,28 @@
 package com.jeffreybosboom.hexcells;
 
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
 import com.jeffreybosboom.hexcells.Recognizer.Result.ConstraintKind;
 import com.jeffreybosboom.hexcells.Recognizer.Result.ConstraintPosition;
 import java.awt.Color;
 import java.awt.Font;
-import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.util.Comparator;
-import java.util.IntSummaryStatistics;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.EnumSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
 import javax.imageio.ImageIO;
 
 /**
@@ -50,8 +55,8 @@ public final class Recognizer {
 
 	private static final class ImageData {
 		//grayscale images, so this is one (any one) of the RGB values.
-		private final byte[] data;
-		private final byte width, height;
+		private byte[] data;
+		private byte width, height;
 		ImageData(byte[] data, byte width, byte height) {
 			this.data = data;
 			this.width = width;
@@ -68,11 +73,16 @@ public final class Recognizer {
 					data[yp * width + xp] = (byte)(image.getRGB(x + xp, y + yp) & 0xFF);
 				}
 		}
-		ImageData(ImageData image, int x, int y, int width, int height) {
-			this(new byte[width*height], (byte)width, (byte)height);
-			for (int yp = 0; yp < height; ++yp)
-				for (int xp = 0; xp < width; ++xp)
-					data[yp * width + xp] = image.at(x + xp, y + yp);
+		/**
+		 * Resizes this image, reusing its storage if it's big enough.  Only
+		 * for per-thread scratch images, never for the references.
+		 */
+		ImageData resize(int width, int height) {
+			if (data.length < width * height)
+				data = new byte[width * height];
+			this.width = (byte)width;
+			this.height = (byte)height;
+			return this;
 		}
 		public byte width() {
 			return width;
@@ -83,13 +93,68 @@ public final class Recognizer {
 		public byte at(int x, int y) {
 			return data[y * width() + x];
 		}
+		void set(int x, int y, byte value) {
+			data[y * width() + x] = value;
+		}
+	}
+
+	/**
+	 * Glyphs are compared on a fixed square grid: the glyph is scaled, keeping
+	 * its aspect ratio, until its longer side spans the grid, then placed with
+	 * its ink centroid at the grid's center.  Each grid pixel holds how much of
+	 * it is covered by ink (0 to 1), row-major.
+	 */
+	private static final int CANONICAL_SIZE = 32;
+	/**
+	 * The font size references are rendered at.  Normalization removes the
+	 * size, so one is enough; it's at the large end of what the game uses so
+	 * the references are rarely scaled up.
+	 */
+	private static final int REFERENCE_FONT_SIZE = 24;
+
+	/**
+	 * Per-thread buffers for cleaning, so recognizing a glyph doesn't allocate
+	 * intermediate images.
+	 */
+	private static final class Scratch {
+		int[] pixels = new int[0];
+		final ImageData glyph = new ImageData(new byte[0], (byte)0, (byte)0);
+		final float[] coverage = new float[CANONICAL_SIZE * CANONICAL_SIZE],
+				canonical = new float[CANONICAL_SIZE * CANONICAL_SIZE];
+		int[] pixels(BufferedImage image, Rectangle box) {
+			if (pixels.length < box.width * box.height)
+				pixels = new int[box.width * box.height];
+			image.getRGB(box.x, box.y, box.width, box.height, pixels, 0, box.width);
+			return pixels;
+		}
+		/**
+		 * Copies the box's pixels, with the parts of the excluded rectangles
+		 * inside it whitened.
+		 */
+		int[] pixels(BufferedImage image, Rectangle box, Collection<Rectangle> exclude) {
+			int[] pixels = pixels(image, box);
+			for (Rectangle r : exclude) {
+				int minX = Math.max(r.x, box.x), maxX = Math.min(r.x + r.width, box.x + box.width),
+						minY = Math.max(r.y, box.y), maxY = Math.min(r.y + r.height, box.y + box.height);
+				if (minX >= maxX) continue;
+				for (int y = minY; y < maxY; ++y)
+					Arrays.fill(pixels, (y - box.y) * box.width + minX - box.x,
+							(y - box.y) * box.width + maxX - box.x, WHITE_RGB);
+			}
+			return pixels;
+		}
 	}
+	private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
 
 	private static final int WHITE_RGB = Color.WHITE.getRGB();
 	private static final byte WHITE = (byte)(WHITE_RGB & 0xFF);
-	private final ImmutableMap<ImageData, Result> references;
+	//normalized references for in-cell constraints (top orientation, at most 6, or ?)
+	private final ImmutableList<Map.Entry<float[], Result>> cellReferences;
+	//normalized board-edge references by orientation (excluding question marks)
+	private final ImmutableListMultimap<ConstraintPosition, Map.Entry<float[], Result>> edgeReferences;
 	public Recognizer() {
-		ImmutableMap.Builder<ImageData, Result> builder = ImmutableMap.builder();
+		ImmutableList.Builder<Map.Entry<float[], Result>> cellBuilder = ImmutableList.builder();
+		ImmutableListMultimap.Builder<ConstraintPosition, Map.Entry<float[], Result>> edgeBuilder = ImmutableListMultimap.builder();
 		for (ConstraintPosition p : ConstraintPosition.values())
 			for (ConstraintKind k : ConstraintKind.values())
 				for (int n = (k == ConstraintKind.NORMAL ? 0 : 2); n < 10; ++n) {
@@ -98,171 +163,288 @@ public final class Recognizer {
 						s = '{' + s + '}';
 					else if (k == ConstraintKind.DISCONNECTED)
 						s = '-' + s + '-';
-					Result r = new Result(n, k, p);
-					for (int fontSize = 16; fontSize < 27; ++fontSize) {
-						builder.put(render(s, fontSize, p, true), r);
-//						builder.put(render(s, fontSize, p, false), r);
-					}
+					Map.Entry<float[], Result> e = Maps.immutableEntry(
+							reference(s, p, true), new Result(n, k, p));
+					edgeBuilder.put(p, e);
+					if (p == ConstraintPosition.TOP && n <= 6)
+						cellBuilder.add(e);
 				}
 		Result qr = new Result(Result.QUESTION_MARK, ConstraintKind.NORMAL, ConstraintPosition.TOP);
-		for (int fontSize = 16; fontSize < 26; ++fontSize) {
-			builder.put(render("?", fontSize, qr.pos, true), qr);
-			builder.put(render("?", fontSize, qr.pos, false), qr);
-		}
-		this.references = builder.build();
+		for (boolean antialiased : new boolean[]{true, false})
+			cellBuilder.add(Maps.immutableEntry(reference("?", qr.pos, antialiased), qr));
+		this.cellReferences = cellBuilder.build();
+		this.edgeReferences = edgeBuilder.build();
+	}
+
+	private static float[] reference(String string, ConstraintPosition orientation, boolean antialiased) {
+		return normalize(render(string, REFERENCE_FONT_SIZE, orientation, antialiased),
+				new float[CANONICAL_SIZE * CANONICAL_SIZE], new float[CANONICAL_SIZE * CANONICAL_SIZE]);
 	}
 
 	public Optional<Result> recognizeCell(BufferedImage image, CellState cellKind) {
-		return cleanCellConstraintImage(cellKind, image).map(cleaned ->
-				compare(cleaned, references.entrySet().stream()
-						.filter(e -> e.getValue().pos == ConstraintPosition.TOP)
-						.filter(e -> e.getValue().number <= 6).iterator()));
+		return recognizeCell(image, new Rectangle(0, 0, image.getWidth(), image.getHeight()), cellKind);
+	}
+
+	/**
+	 * Recognizes the constraint in the cell whose bounding box is given.
+	 * @param image the image containing the cell; not modified
+	 * @param box the cell's bounding box
+	 * @param cellKind the cell's state
+	 * @return the constraint, if any
+	 */
+	public Optional<Result> recognizeCell(BufferedImage image, Rectangle box, CellState cellKind) {
+		return recognizeCell(image, box, cellKind, ImmutableList.of());
 	}
 
-	private static Optional<ImageData> cleanCellConstraintImage(CellState cellKind, BufferedImage subimage) {
-		Color interiorColor = Colors.HEXAGON_INTERIOR_COLORS.inverse().get(cellKind);
-		Region cellRegion = Region.connectedComponents(subimage, ImmutableSet.of(interiorColor.getRGB()))
-				.stream().sorted(Comparator.comparingInt((Region r_) -> r_.points().size()).reversed()).findFirst().get();
-		Rectangle interiorBox = cellRegion.boundingBox();
+	/**
+	 * Recognizes the constraint in the cell whose bounding box is given,
+	 * treating the given areas (the neighboring cells, whose corners poke
+	 * into the bounding box) as white.
+	 * @param image the image containing the cell; not modified
+	 * @param box the cell's bounding box
+	 * @param cellKind the cell's state
+	 * @param exclude the areas to ignore
+	 * @return the constraint, if any
+	 */
+	public Optional<Result> recognizeCell(BufferedImage image, Rectangle box, CellState cellKind, Collection<Rectangle> exclude) {
+		return cleanCellConstraintImage(cellKind, image, box, exclude).map(cleaned ->
+				compare(cleaned, cellReferences.iterator()));
+	}
+
+	private static Optional<ImageData> cleanCellConstraintImage(CellState cellKind, BufferedImage image, Rectangle box, Collection<Rectangle> exclude) {
+		int interiorRGB = Colors.HEXAGON_INTERIOR_COLORS.inverse().get(cellKind).getRGB();
+		Scratch scratch = SCRATCH.get();
+		int[] pixels = scratch.pixels(image, box, exclude);
+		//The constraint is whatever isn't interior color inside the interior,
+		//so find the interior's extent in each column and look between.
 		int constraintMinX = Integer.MAX_VALUE, constraintMaxX = Integer.MIN_VALUE,
 				constraintMinY = Integer.MAX_VALUE, constraintMaxY = Integer.MIN_VALUE;
-		for (int ex = interiorBox.x; ex < interiorBox.x + interiorBox.width; ++ex) {
-			final int ex_ = ex;
-			IntSummaryStatistics rowExtrema = cellRegion.points().stream()
-					.filter(p -> p.x == ex_)
-					.collect(Collectors.summarizingInt(Region.Point::y));
-			for (int ey = rowExtrema.getMin(); ey < rowExtrema.getMax(); ++ey)
-				if (!cellRegion.points().contains(new Region.Point(ex, ey))) {
-					constraintMinX = Math.min(constraintMinX, ex);
-					constraintMaxX = Math.max(constraintMaxX, ex);
-					constraintMinY = Math.min(constraintMinY, ey);
-					constraintMaxY = Math.max(constraintMaxY, ey);
+		for (int x = 0; x < box.width; ++x) {
+			int top = 0, bottom = box.height - 1;
+			while (top < box.height && pixels[top * box.width + x] != interiorRGB) ++top;
+			while (bottom > top && pixels[bottom * box.width + x] != interiorRGB) --bottom;
+			for (int y = top + 1; y < bottom; ++y)
+				if (pixels[y * box.width + x] != interiorRGB) {
+					constraintMinX = Math.min(constraintMinX, x);
+					constraintMaxX = Math.max(constraintMaxX, x);
+					constraintMinY = Math.min(constraintMinY, y);
+					constraintMaxY = Math.max(constraintMaxY, y);
 				}
 		}
 		if (constraintMinX == Integer.MAX_VALUE) return Optional.empty();
-		subimage = subimage.getSubimage(constraintMinX, constraintMinY,
-				constraintMaxX - constraintMinX + 1, constraintMaxY - constraintMinY + 1);
-		return Optional.of(new ImageData(maskOrInvert(copyImage(subimage), interiorColor)));
-	}
 
-	private static BufferedImage maskOrInvert(BufferedImage image, Color maskToWhite) {
-		for (int x = 0; x < image.getWidth(); ++x)
-			for (int y = 0; y < image.getHeight(); ++y) {
-				int rgb = image.getRGB(x, y);
-				if (rgb == maskToWhite.getRGB())
-					image.setRGB(x, y, WHITE_RGB);
-				else
-					image.setRGB(x, y, ~rgb | (255 << 24));
+		//mask the interior to white and invert the rest
+		ImageData glyph = scratch.glyph.resize(constraintMaxX - constraintMinX + 1, constraintMaxY - constraintMinY + 1);
+		for (int y = 0; y < glyph.height(); ++y)
+			for (int x = 0; x < glyph.width(); ++x) {
+				int rgb = pixels[(constraintMinY + y) * box.width + constraintMinX + x];
+				glyph.set(x, y, rgb == interiorRGB ? WHITE : (byte)(~rgb & 0xFF));
 			}
-		return image;
+		return Optional.of(glyph);
 	}
 
-	//https://stackoverflow.com/a/19327237/3614835
-	private static BufferedImage copyImage(BufferedImage source) {
-		BufferedImage b = new BufferedImage(source.getWidth(), source.getHeight(), source.getType());
-		Graphics g = b.getGraphics();
-		g.drawImage(source, 0, 0, null);
-		g.dispose();
-		return b;
+	public Optional<Result> recognizeBoardEdge(BufferedImage image) {
+		return recognizeBoardEdge(image, new Rectangle(0, 0, image.getWidth(), image.getHeight()),
+				EnumSet.allOf(ConstraintPosition.class));
 	}
 
-	public Optional<Result> recognizeBoardEdge(BufferedImage image) {
-		return cleanBoardEdgeConstraintImage(image).map(cleaned ->
-				compare(cleaned, references.entrySet().stream()
-						.filter(e -> e.getValue().number != Result.QUESTION_MARK).iterator()));
+	/**
+	 * Recognizes the board-edge constraint inside the given box, considering
+	 * only the given orientations.
+	 * @param image the image containing the constraint; not modified
+	 * @param box the area to look in, usually from {@link #findBoardEdgeGlyphs}
+	 * @param positions the orientations the constraint could have
+	 * @return the constraint, if any
+	 */
+	public Optional<Result> recognizeBoardEdge(BufferedImage image, Rectangle box, Set<ConstraintPosition> positions) {
+		return recognizeBoardEdge(image, box, positions, ImmutableList.of());
+	}
+
+	/**
+	 * Recognizes the board-edge constraint inside the given box, considering
+	 * only the given orientations and treating the given areas (the cells) as
+	 * white.
+	 * @param image the image containing the constraint; not modified
+	 * @param box the area to look in, usually from {@link #findBoardEdgeGlyphs}
+	 * @param positions the orientations the constraint could have
+	 * @param exclude the areas to ignore
+	 * @return the constraint, if any
+	 */
+	public Optional<Result> recognizeBoardEdge(BufferedImage image, Rectangle box, Set<ConstraintPosition> positions, Collection<Rectangle> exclude) {
+		return cleanBoardEdgeConstraintImage(image, box, exclude).map(cleaned ->
+				compare(cleaned, Iterators.concat(positions.stream()
+						.map(p -> edgeReferences.get(p).iterator()).iterator())));
+	}
+
+	private static boolean isBoardEdgeGlyphPixel(int rgb) {
+		int r = (rgb >> 16) & 0xFF, g = (rgb >> 8) & 0xFF, b = rgb & 0xFF;
+		return r == g && r == b && r < 220;
+	}
+
+	/**
+	 * Segments the board-edge glyph pixels (dark grays) in the given area into
+	 * 8-connected blobs in one pass.  A single constraint may be several blobs
+	 * (e.g., the braces in {3}).
+	 * @param image the image; not modified
+	 * @param area the area to segment
+	 * @return the bounding boxes of the blobs
+	 */
+	public List<Rectangle> findBoardEdgeGlyphs(BufferedImage image, Rectangle area) {
+		return findBoardEdgeGlyphs(image, area, ImmutableList.of());
+	}
+
+	/**
+	 * Segments the board-edge glyph pixels (dark grays) in the given area,
+	 * outside the given areas, into 8-connected blobs in one pass.  The cells
+	 * should be excluded, as absent cells' interiors are dark gray too.
+	 * @param image the image; not modified
+	 * @param area the area to segment
+	 * @param exclude the areas to ignore
+	 * @return the bounding boxes of the blobs
+	 */
+	public List<Rectangle> findBoardEdgeGlyphs(BufferedImage image, Rectangle area, Collection<Rectangle> exclude) {
+		int[] pixels = SCRATCH.get().pixels(image, area, exclude);
+		int size = area.width * area.height;
+		BitSet glyph = new BitSet(size);
+		for (int i = 0; i < size; ++i)
+			if (isBoardEdgeGlyphPixel(pixels[i]))
+				glyph.set(i);
+
+		List<Rectangle> blobs = new ArrayList<>();
+		int[] stack = new int[16];
+		for (int seed = glyph.nextSetBit(0); seed >= 0; seed = glyph.nextSetBit(seed + 1)) {
+			int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE,
+					minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+			int top = 0;
+			stack[top++] = seed;
+			glyph.clear(seed);
+			while (top > 0) {
+				int i = stack[--top], x = i % area.width, y = i / area.width;
+				minX = Math.min(minX, x);
+				maxX = Math.max(maxX, x);
+				minY = Math.min(minY, y);
+				maxY = Math.max(maxY, y);
+				for (int ny = Math.max(y - 1, 0); ny <= Math.min(y + 1, area.height - 1); ++ny)
+					for (int nx = Math.max(x - 1, 0); nx <= Math.min(x + 1, area.width - 1); ++nx) {
+						int n = ny * area.width + nx;
+						if (glyph.get(n)) {
+							glyph.clear(n);
+							if (top == stack.length)
+								stack = Arrays.copyOf(stack, stack.length * 2);
+							stack[top++] = n;
+						}
+					}
+			}
+			blobs.add(new Rectangle(area.x + minX, area.y + minY, maxX - minX + 1, maxY - minY + 1));
+		}
+		return blobs;
 	}
 
-	private static Optional<ImageData> cleanBoardEdgeConstraintImage(BufferedImage buffer) {
-		int nonWhiteMinX = Integer.MAX_VALUE, nonWhiteMinY = Integer.MAX_VALUE;
-		for (int x = 0; x < buffer.getWidth(); ++x)
-			for (int y = 0; y < buffer.getHeight(); ++y) {
-				//still need getRGB here to check it's grayscale
-				Color rgb = new Color(buffer.getRGB(x, y));
-				if (rgb.getRed() != rgb.getGreen() ||
-						rgb.getRed() != rgb.getBlue() ||
-						rgb.getGreen() != rgb.getBlue() ||
-						rgb.getRed() >= 220)
-					buffer.setRGB(x, y, WHITE_RGB);
+	private static Optional<ImageData> cleanBoardEdgeConstraintImage(BufferedImage image, Rectangle box, Collection<Rectangle> exclude) {
+		Scratch scratch = SCRATCH.get();
+		int[] pixels = scratch.pixels(image, box, exclude);
+		//Whiten everything but dark grays, in place in the scratch buffer.
+		int nonWhiteMinX = Integer.MAX_VALUE, nonWhiteMaxX = Integer.MIN_VALUE,
+				nonWhiteMinY = Integer.MAX_VALUE, nonWhiteMaxY = Integer.MIN_VALUE;
+		for (int y = 0; y < box.height; ++y)
+			for (int x = 0; x < box.width; ++x) {
+				int i = y * box.width + x;
+				if (!isBoardEdgeGlyphPixel(pixels[i]))
+					pixels[i] = WHITE_RGB;
 				else {
 					nonWhiteMinX = Math.min(nonWhiteMinX, x);
+					nonWhiteMaxX = Math.max(nonWhiteMaxX, x);
 					nonWhiteMinY = Math.min(nonWhiteMinY, y);
+					nonWhiteMaxY = Math.max(nonWhiteMaxY, y);
 				}
 			}
 		if (nonWhiteMinX == Integer.MAX_VALUE) return Optional.empty();
 
-		ImageData data = new ImageData(buffer);
-		int nonWhiteMaxX = nonWhiteMinX, nonWhiteMaxY = nonWhiteMinY;
-		outer: while (nonWhiteMaxX < data.width()) {
-			for (int y = 0; y < data.height(); ++y)
-				if (data.at(nonWhiteMaxX, y) != WHITE) {
-					++nonWhiteMaxX;
-					continue outer;
-				}
-			break;
-		}
-		outer: while (nonWhiteMaxY < data.height()) {
-			for (int x = 0; x < data.width(); ++x)
-				if (data.at(x, nonWhiteMaxY) != WHITE) {
-					++nonWhiteMaxY;
-					continue outer;
-				}
-			break;
-		}
-		data = new ImageData(data, nonWhiteMinX, nonWhiteMinY,
-				nonWhiteMaxX - nonWhiteMinX, nonWhiteMaxY - nonWhiteMinY);
-
-		for (int x = 0; x < data.width(); ++x)
-			for (int y = 0; y < data.height(); ++y)
-				if (Byte.toUnsignedInt(data.at(x, y)) <= 70)
-					return Optional.of(data);
-		return Optional.empty();
+		ImageData glyph = scratch.glyph.resize(nonWhiteMaxX - nonWhiteMinX + 1, nonWhiteMaxY - nonWhiteMinY + 1);
+		boolean dark = false;
+		for (int y = 0; y < glyph.height(); ++y)
+			for (int x = 0; x < glyph.width(); ++x) {
+				byte value = (byte)(pixels[(nonWhiteMinY + y) * box.width + nonWhiteMinX + x] & 0xFF);
+				glyph.set(x, y, value);
+				dark |= Byte.toUnsignedInt(value) <= 70;
+			}
+		return dark ? Optional.of(glyph) : Optional.empty();
 	}
 
-	private static Result compare(ImageData needle, Iterator<Map.Entry<ImageData, Result>> haystack) {
-		int bestScore = Integer.MIN_VALUE;
+	private static Result compare(ImageData needle, Iterator<Map.Entry<float[], Result>> haystack) {
+		Scratch scratch = SCRATCH.get();
+		float[] canonical = normalize(needle, scratch.coverage, scratch.canonical);
+		float bestDistance = Float.POSITIVE_INFINITY;
 		Result result = null;
 		while (haystack.hasNext()) {
-			Map.Entry<ImageData, Result> e = haystack.next();
-			int score = bestFitCompare(needle, e.getKey());
-			if (score > bestScore) {
-				bestScore = score;
+			Map.Entry<float[], Result> e = haystack.next();
+			float[] reference = e.getKey();
+			float distance = 0;
+			for (int i = 0; i < canonical.length; ++i)
+				distance += Math.abs(canonical[i] - reference[i]);
+			if (distance < bestDistance) {
+				bestDistance = distance;
 				result = e.getValue();
 			}
 		}
 		return result;
 	}
 
-	private static int bestFitCompare(ImageData needle, ImageData haystack) {
-		if (haystack.width() < needle.width() && haystack.height() < needle.height())
-			return bestFitCompare(haystack, needle);
-		else if (!(needle.width() <= haystack.width() && needle.height() <= haystack.height()))
-			return Integer.MIN_VALUE; //images do not fit inside each other
-
-		int score = 0;
-		if (needle.width() == haystack.width() && needle.height() == haystack.height()) {
-			score = bestFitCompare(needle, haystack, 0, 0);
-		} else {
-			//Try each a-sized subimage of b, penalizing for the size difference.
-			int difference = haystack.width() * haystack.height() - needle.width() * needle.height();
-			for (int x = 0; x < haystack.width() - needle.width(); ++x)
-				for (int y = 0; y < haystack.height() - needle.height(); ++y) {
-					int subscore = bestFitCompare(needle, haystack, x, y);
-					score = Math.max(score, subscore - difference);
+	/**
+	 * Scales the given image onto the canonical grid (see
+	 * {@link #CANONICAL_SIZE}).  Each source pixel's darkness is spread over
+	 * the grid pixels it overlaps, in proportion to the overlap, so thin
+	 * strokes survive downscaling and antialiasing is kept.  The result is
+	 * then blurred a little, so strokes a pixel off still partly match.
+	 * @param image the image to normalize
+	 * @param coverage scratch space, the size of the grid
+	 * @param canonical where to store the normalized image
+	 * @return canonical
+	 */
+	private static float[] normalize(ImageData image, float[] coverage, float[] canonical) {
+		Arrays.fill(coverage, 0);
+		Arrays.fill(canonical, 0);
+		double sumX = 0, sumY = 0, ink = 0;
+		for (int y = 0; y < image.height(); ++y)
+			for (int x = 0; x < image.width(); ++x) {
+				int darkness = 0xFF - Byte.toUnsignedInt(image.at(x, y));
+				sumX += darkness * (x + 0.5);
+				sumY += darkness * (y + 0.5);
+				ink += darkness;
+			}
+		if (ink == 0) return canonical;
+		double scale = CANONICAL_SIZE / (double)Math.max(image.width(), image.height());
+		//grid coordinates of the source image's origin, putting the centroid
+		//at the grid's center
+		double originX = CANONICAL_SIZE / 2.0 - sumX / ink * scale,
+				originY = CANONICAL_SIZE / 2.0 - sumY / ink * scale;
+		for (int y = 0; y < image.height(); ++y) {
+			double top = originY + y * scale, bottom = top + scale;
+			for (int x = 0; x < image.width(); ++x) {
+				int darkness = 0xFF - Byte.toUnsignedInt(image.at(x, y));
+				if (darkness == 0) continue;
+				double left = originX + x * scale, right = left + scale;
+				for (int cy = Math.max((int)Math.floor(top), 0); cy < Math.min(Math.ceil(bottom), CANONICAL_SIZE); ++cy) {
+					double dy = Math.min(cy + 1, bottom) - Math.max(cy, top);
+					for (int cx = Math.max((int)Math.floor(left), 0); cx < Math.min(Math.ceil(right), CANONICAL_SIZE); ++cx) {
+						double dx = Math.min(cx + 1, right) - Math.max(cx, left);
+						coverage[cy * CANONICAL_SIZE + cx] += (float)(darkness / 255.0 * dx * dy);
+					}
 				}
+			}
 		}
-		return score;
-	}
-
-	private static int bestFitCompare(ImageData a, ImageData b, int bx, int by) {
-		int score = 0;
-		for (int x = 0; x < a.width(); ++x)
-			for (int y = 0; y < a.height(); ++y)
-				score += (a.at(x, y) != WHITE) == (b.at(bx + x, by + y) != WHITE)
-						? 1 : -2;
-		return score;
+		for (int cy = 0; cy < CANONICAL_SIZE; ++cy)
+			for (int cx = 0; cx < CANONICAL_SIZE; ++cx) {
+				float sum = 0;
+				for (int y = Math.max(cy - 1, 0); y <= Math.min(cy + 1, CANONICAL_SIZE - 1); ++y)
+					for (int x = Math.max(cx - 1, 0); x <= Math.min(cx + 1, CANONICAL_SIZE - 1); ++x)
+						sum += coverage[y * CANONICAL_SIZE + x];
+				canonical[cy * CANONICAL_SIZE + cx] = sum;
+			}
+		return canonical;
 	}
 
-	private static final Font HARABARA = new Font("Harabara", Font.PLAIN, 16);
+	static final Font HARABARA = new Font("Harabara", Font.PLAIN, 16);
 	private static ImageData render(String string, int fontSize, ConstraintPosition orientation, boolean antialiased) {
 		//It's too hard to compute how big an image to make, so make a super-big
 		//one and crop it later.
@@ -298,12 +480,28 @@ public final class Recognizer {
 		return new ImageData(image, minX, minY, maxX - minX + 1, maxY - minY + 1);
 	}
 
+	/**
+	 * Recognizes an already-cleaned in-cell constraint image (dark glyph on
+	 * white, like the samples in constraints/).  The image is cropped to the
+	 * glyph first.
+	 * @param image the image; must contain a glyph
+	 * @return the constraint
+	 */
+	Result recognizeCleanedCell(BufferedImage image) {
+		return compare(crop(image), cellReferences.iterator());
+	}
+
+	/**
+	 * Recognizes each of the given cleaned in-cell constraint images (by
+	 * default, every sample in constraints/) and prints the results.
+	 * @see VisionBenchmark
+	 */
 	public static void main(String[] args) throws Throwable {
 		Recognizer r = new Recognizer();
-		System.out.println(compare(new ImageData(ImageIO.read(
-				new File("constraints/f65281a4a12175cd659ea4e26bbf9361abe0611c.png"))),
-				r.references.entrySet().stream()
-				.filter(e -> e.getValue().pos == ConstraintPosition.TOP)
-				.filter(e -> e.getValue().number <= 6).iterator()));
+		File[] files = args.length > 0 ? Arrays.stream(args).map(File::new).toArray(File[]::new)
+				: new File("constraints").listFiles((dir, name) -> name.endsWith(".png"));
+		if (files == null) files = new File[0];
+		for (File f : files)
+			System.out.println(f.getName() + " " + r.recognizeCleanedCell(ImageIO.read(f)));
 	}
 }
@@ -18,18 +18,24 @@
 
 package com.jeffreybosboom.hexcells;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Ints;
 import java.awt.Color;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
-import java.util.Deque;
+import java.util.HashMap;
 import java.util.IntSummaryStatistics;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  *
@@ -49,51 +55,176 @@ public final class Region {
 		this.yStats = this.points.stream().mapToInt(Point::y).summaryStatistics();
 	}
 
-	private static final int[][] NEIGHBORHOOD = {
-		{-1, -1}, {-1, 0}, {-1, 1},
-		{0, -1}, {0, 1},
-		{1, -1}, {1, 0}, {1, 1},
-	};
 	public static ImmutableSet<Region> connectedComponents(BufferedImage image, Set<Integer> interestingColors) {
-		final int imageSize = image.getWidth() * image.getHeight();
-		BitSet processed = new BitSet(imageSize);
-		for (int x = 0; x < image.getWidth(); ++x)
-			for (int y = 0; y < image.getHeight(); ++y)
-				if (!interestingColors.contains(image.getRGB(x, y)))
-					processed.set(y * image.getWidth() + x);
+		return connectedComponents(image, interestingColors, 1);
+	}
 
+	/**
+	 * Finds the 8-connected regions of the given colors, looking for them only
+	 * at every step-th pixel in each direction and labeling at full resolution
+	 * from there.  Only the pixels of the regions found are labeled, so the
+	 * work is proportional to the samples plus the regions' areas rather than
+	 * the image's.  Regions that no sample lands in are not found; a region
+	 * at least step pixels thick (in x or y) everywhere, like a hexagon's
+	 * border when step is at most the border width, is always found.
+	 * @param image the image
+	 * @param interestingColors the colors of the regions to find
+	 * @param step the sampling step; 1 finds every region
+	 * @return the regions, in the order their first sample was scanned
+	 */
+	public static ImmutableSet<Region> connectedComponents(BufferedImage image, Set<Integer> interestingColors, int step) {
+		checkArgument(step >= 1, step);
+		int[] colors = Ints.toArray(interestingColors);
+		int width = image.getWidth(), height = image.getHeight();
+		BitSet labeled = new BitSet(width * height);
+		int[] stack = new int[16];
 		ImmutableSet.Builder<Region> builder = ImmutableSet.builder();
-		int lastClearBit = 0;
-		while ((lastClearBit = processed.nextClearBit(lastClearBit)) != imageSize) {
-			int fillY = lastClearBit / image.getWidth(), fillX = lastClearBit % image.getWidth();
-			int color = image.getRGB(fillX, fillY);
-			List<Point> points = new ArrayList<>();
-
-			//flood fill
-			Deque<Point> frontier = new ArrayDeque<>();
-			frontier.push(new Point(fillX, fillY));
-			while (!frontier.isEmpty()) {
-				Point p = frontier.pop();
-				int bitIndex = p.row() * image.getWidth() + p.col();
-				if (processed.get(bitIndex)) continue;
-				if (image.getRGB(p.x, p.y) != color) continue;
-
-				points.add(p);
-				processed.set(bitIndex);
-				for (int[] n : NEIGHBORHOOD) {
-					int nx = p.x + n[0], ny = p.y + n[1];
-					int nBitIndex = nx + ny * image.getWidth();
-					if (0 <= nx && nx < image.getWidth()&& 0 <= ny && ny < image.getHeight()
-							&& !processed.get(nBitIndex))
-						frontier.push(new Point(nx, ny));
+		for (int y = 0; y < height; y += step)
+			for (int x = 0; x < width; x += step) {
+				if (labeled.get(y * width + x)) continue;
+				int color = image.getRGB(x, y);
+				if (!Ints.contains(colors, color)) continue;
+
+				//flood fill
+				List<Point> points = new ArrayList<>();
+				int top = 0;
+				stack[top++] = y * width + x;
+				labeled.set(y * width + x);
+				while (top > 0) {
+					int i = stack[--top], px = i % width, py = i / width;
+					points.add(new Point(px, py));
+					for (int ny = Math.max(py - 1, 0); ny <= Math.min(py + 1, height - 1); ++ny)
+						for (int nx = Math.max(px - 1, 0); nx <= Math.min(px + 1, width - 1); ++nx) {
+							int n = ny * width + nx;
+							if (!labeled.get(n) && image.getRGB(nx, ny) == color) {
+								labeled.set(n);
+								if (top == stack.length)
+									stack = Arrays.copyOf(stack, stack.length * 2);
+								stack[top++] = n;
+							}
+						}
 				}
+				builder.add(new Region(color, points));
 			}
-			assert !points.isEmpty();
-			builder.add(new Region(color, points));
+		return builder.build();
+	}
+
+	/**
+	 * Finds every 8-connected region of the given colors, labeling horizontal
+	 * strips of the image concurrently.  Each strip is labeled with a raster
+	 * scan, unioning each pixel with its already-scanned neighbors of the same
+	 * color; then the rows on either side of each seam are unioned, and each
+	 * strip resolves its pixels' labels and collects its part of each region.
+	 * Returns the same regions, in the same order, as
+	 * {@link #connectedComponents(BufferedImage, Set)}, with each region's
+	 * points in raster order.
+	 * @param image the image
+	 * @param interestingColors the colors of the regions to find
+	 * @param strips how many strips to split the image into
+	 * @return the regions, in the order of their first pixel in raster order
+	 */
+	public static ImmutableSet<Region> connectedComponentsInStrips(BufferedImage image, Set<Integer> interestingColors, int strips) {
+		checkArgument(strips >= 1, strips);
+		int[] colors = Ints.toArray(interestingColors);
+		int width = image.getWidth(), height = image.getHeight();
+		int stripHeight = Math.max((height + strips - 1) / strips, 1);
+		strips = (height + stripHeight - 1) / stripHeight;
+		int[] pixels = new int[width * height];
+		//Union-find over pixel indices (-1 for uninteresting pixels).  Roots
+		//are always the smallest index in their set, so a region's label is
+		//its first pixel.  During the first pass, each strip only touches its
+		//own indices.
+		int[] parent = new int[width * height];
+		IntStream.range(0, strips).parallel().forEach(strip -> {
+			int y0 = strip * stripHeight, y1 = Math.min(y0 + stripHeight, height);
+			image.getRGB(0, y0, width, y1 - y0, pixels, y0 * width, width);
+			for (int y = y0; y < y1; ++y)
+				for (int x = 0; x < width; ++x) {
+					int i = y * width + x, color = pixels[i];
+					if (!Ints.contains(colors, color)) {
+						parent[i] = -1;
+						continue;
+					}
+					parent[i] = i;
+					if (x > 0 && pixels[i - 1] == color)
+						union(parent, i, i - 1);
+					if (y > y0)
+						unionAbove(parent, pixels, width, x, y);
+				}
+		});
+		for (int strip = 1; strip < strips; ++strip) {
+			int y = strip * stripHeight;
+			for (int x = 0; x < width; ++x)
+				if (parent[y * width + x] >= 0)
+					unionAbove(parent, pixels, width, x, y);
 		}
+
+		//Each strip collects its points by label, in raster order; then the
+		//strips' parts are concatenated in strip order.
+		List<Map<Integer, List<Point>>> parts = IntStream.range(0, strips).parallel()
+				.mapToObj(strip -> {
+					int y0 = strip * stripHeight, y1 = Math.min(y0 + stripHeight, height);
+					Map<Integer, List<Point>> part = new HashMap<>();
+					for (int y = y0; y < y1; ++y)
+						for (int x = 0; x < width; ++x) {
+							int i = y * width + x;
+							if (parent[i] >= 0)
+								part.computeIfAbsent(root(parent, i), k -> new ArrayList<>()).add(new Point(x, y));
+						}
+					return part;
+				})
+				.collect(Collectors.toList());
+		Map<Integer, List<Point>> regions = new TreeMap<>();
+		for (Map<Integer, List<Point>> part : parts)
+			part.forEach((label, points) -> regions.computeIfAbsent(label, k -> new ArrayList<>()).addAll(points));
+		ImmutableSet.Builder<Region> builder = ImmutableSet.builder();
+		regions.forEach((label, points) -> builder.add(new Region(pixels[label], points)));
 		return builder.build();
 	}
 
+	/**
+	 * Unions the given pixel with its neighbors of the same color in the row
+	 * above.
+	 */
+	private static void unionAbove(int[] parent, int[] pixels, int width, int x, int y) {
+		int i = y * width + x, color = pixels[i];
+		for (int nx = Math.max(x - 1, 0); nx <= Math.min(x + 1, width - 1); ++nx) {
+			int n = (y - 1) * width + nx;
+			if (pixels[n] == color)
+				union(parent, i, n);
+		}
+	}
+
+	/**
+	 * Finds the given pixel's label, halving the path to it.
+	 */
+	private static int find(int[] parent, int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+
+	/**
+	 * Finds the given pixel's label without modifying the union-find, so
+	 * strips can resolve their labels concurrently.
+	 */
+	private static int root(int[] parent, int i) {
+		while (parent[i] != i)
+			i = parent[i];
+		return i;
+	}
+
+	private static void union(int[] parent, int a, int b) {
+		a = find(parent, a);
+		b = find(parent, b);
+		if (a < b)
+			parent[b] = a;
+		else if (b < a)
+			parent[a] = b;
+	}
+
 	public Color color() {
 		return color;
 	}
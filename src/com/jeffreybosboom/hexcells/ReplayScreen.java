@@ -0,0 +1,242 @@
+package com.jeffreybosboom.hexcells;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A Screen that plays back a session recorded by {@link SessionRecorder}, so
+ * the pipeline can be rerun on the exact frames of a recorded run, as fast as
+ * it will go.  Each frame captured for parsing is the next recorded frame.
+ * Once something has been clicked, partial captures (settling, click
+ * verification) see the frame after the current one, which shows the board
+ * after this round's clicks, as the game would.  Clicks don't change
+ * anything, but each round's clicks are compared against the recorded ones.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/19/2026
+ */
+public final class ReplayScreen implements Screen {
+	private final ByteBuffer data;
+	//the frame being shown, and the one after it once we've read ahead
+	private int[] frame = new int[0], next = new int[0];
+	//the frames' origins in the game window and sizes
+	private int x, y, width, height, nextX, nextY, nextWidth, nextHeight;
+	private boolean readAhead, nextExists, clicked;
+	private int frames, divergentRounds;
+	//the recorded clicks for the current round, and the clicks replayed
+	private final Multiset<Pair<Region.Point, CellState>> recordedClicks = HashMultiset.create(),
+			replayedClicks = HashMultiset.create();
+
+	public ReplayScreen(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			checkArgument(channel.size() <= Integer.MAX_VALUE, "%s is too large", file);
+			this.data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		checkArgument(data.remaining() >= 4 && data.getInt() == SessionRecorder.MAGIC, "%s is not a session file", file);
+	}
+
+	/**
+	 * Returns true if there is another recorded frame to capture.
+	 */
+	public boolean hasNextFrame() {
+		return readAhead();
+	}
+
+	/**
+	 * Returns the number of frames captured so far.
+	 */
+	public int frames() {
+		return frames;
+	}
+
+	/**
+	 * Returns the number of rounds whose clicks differed from the recorded
+	 * clicks, as of the last full-window capture.
+	 */
+	public int divergentRounds() {
+		return divergentRounds;
+	}
+
+	/**
+	 * Captures the next recorded frame, with anything outside the recorded
+	 * part of the window white.
+	 * @throws NoSuchElementException if the recording is exhausted
+	 */
+	@Override
+	public BufferedImage capture() {
+		return captureFrame(null, null);
+	}
+
+	/**
+	 * Captures the next recorded frame.
+	 * @throws NoSuchElementException if the recording is exhausted
+	 */
+	@Override
+	public BufferedImage captureFrame(Rectangle region, BufferedImage into) {
+		if (!readAhead())
+			throw new NoSuchElementException("end of recording after " + frames + " frames");
+		endRound();
+		int[] swap = frame;
+		frame = next;
+		next = swap;
+		x = nextX;
+		y = nextY;
+		width = nextWidth;
+		height = nextHeight;
+		readAhead = false;
+		clicked = false;
+		++frames;
+		if (region == null)
+			region = new Rectangle(0, 0, x + width, y + height);
+		return image(frame, x, y, width, height, region, into);
+	}
+
+	@Override
+	public BufferedImage capture(Rectangle region) {
+		if (clicked && readAhead() && nextX == x && nextY == y && nextWidth == width && nextHeight == height)
+			return image(next, x, y, width, height, region, null);
+		return image(frame, x, y, width, height, region, null);
+	}
+
+	@Override
+	public void leftClick(Region.Point p) {
+		replayedClicks.add(new Pair<>(p, CellState.PRESENT));
+		clicked = true;
+	}
+
+	@Override
+	public void rightClick(Region.Point p) {
+		replayedClicks.add(new Pair<>(p, CellState.ABSENT));
+		clicked = true;
+	}
+
+	/**
+	 * Compares the round just played against the recording.
+	 */
+	private void endRound() {
+		if (frames == 0) return;
+		if (!recordedClicks.equals(replayedClicks))
+			++divergentRounds;
+		recordedClicks.clear();
+		replayedClicks.clear();
+	}
+
+	/**
+	 * Copies the given region of the window from a frame at the given origin
+	 * into the given image, if it's the region's size, or a new one.  Parts
+	 * of the region outside the frame are white.
+	 */
+	private static BufferedImage image(int[] pixels, int x, int y, int width, int height, Rectangle region, BufferedImage into) {
+		BufferedImage image = into != null && into.getWidth() == region.width && into.getHeight() == region.height
+				? into : new BufferedImage(region.width, region.height, BufferedImage.TYPE_INT_RGB);
+		Rectangle inside = region.intersection(new Rectangle(x, y, width, height));
+		if (!inside.equals(region)) {
+			int[] white = new int[region.width];
+			Arrays.fill(white, Color.WHITE.getRGB());
+			//a scan size of 0 repeats the row
+			image.setRGB(0, 0, region.width, region.height, white, 0, 0);
+		}
+		if (!inside.isEmpty())
+			image.setRGB(inside.x - region.x, inside.y - region.y, inside.width, inside.height,
+					pixels, (inside.y - y) * width + inside.x - x, width);
+		return image;
+	}
+
+	/**
+	 * Reads up to and including the next frame record, if we haven't already,
+	 * collecting the current round's recorded clicks on the way.
+	 * @return true iff there is a next frame
+	 */
+	private boolean readAhead() {
+		if (readAhead) return nextExists;
+		readAhead = true;
+		nextExists = false;
+		while (data.hasRemaining()) {
+			int tag = data.get();
+			if (tag == SessionRecorder.END) break;
+			int length = SessionRecorder.readVarint(data);
+			int end = data.position() + length;
+			if (tag == SessionRecorder.FRAME) {
+				decodeFrame();
+				nextExists = true;
+			} else if (tag == SessionRecorder.DEDUCTIONS) {
+				int count = SessionRecorder.readVarint(data);
+				for (int i = 0; i < count; ++i) {
+					//the cell, then its state and click point
+					SessionRecorder.readVarint(data);
+					SessionRecorder.readVarint(data);
+					CellState state = CellState.values()[data.get()];
+					int x = SessionRecorder.readVarint(data), y = SessionRecorder.readVarint(data);
+					recordedClicks.add(new Pair<>(new Region.Point(x, y), state));
+				}
+			}
+			data.position(end);
+			if (nextExists) break;
+		}
+		return nextExists;
+	}
+
+	private void decodeFrame() {
+		nextX = SessionRecorder.readVarint(data);
+		nextY = SessionRecorder.readVarint(data);
+		nextWidth = SessionRecorder.readVarint(data);
+		nextHeight = SessionRecorder.readVarint(data);
+		boolean delta = data.get() == SessionRecorder.DELTA_FRAME;
+		int pixels = nextWidth * nextHeight;
+		if (next.length < pixels)
+			next = new int[pixels];
+		for (int i = 0; i < pixels;) {
+			int run = SessionRecorder.readVarint(data);
+			int value = (data.get() & 0xFF) << 16 | (data.get() & 0xFF) << 8 | (data.get() & 0xFF);
+			for (int end = i + run; i < end; ++i)
+				next[i] = 0xFF000000 | (delta ? frame[i] ^ value : value);
+		}
+	}
+
+	/**
+	 * Replays each recorded session through the full pipeline at full speed
+	 * (no settle delays or click verification), then reports the rounds per
+	 * second, the rounds whose clicks differed from the recording and the
+	 * per-stage latencies.
+	 * <p>
+	 * Usage: {@code ReplayScreen session-file...}
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("usage: ReplayScreen session-file...");
+			System.exit(2);
+		}
+		StageTimings timings = new StageTimings();
+		int frames = 0, divergent = 0;
+		long start = System.nanoTime();
+		for (String file : args) {
+			ReplayScreen screen = new ReplayScreen(Paths.get(file));
+			Effector effector = new Effector(screen, new SettleWaiter(0, 0, 3000), timings, false);
+			while (screen.hasNextFrame())
+				try {
+					effector.playPuzzle();
+				} catch (NoSuchElementException ex) {
+					//the recording ended mid-puzzle
+					break;
+				}
+			screen.endRound();
+			frames += screen.frames();
+			divergent += screen.divergentRounds();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.format("%d rounds in %.2f s (%.2f rounds/s), %d differed from the recording%n",
+				frames, seconds, frames / seconds, divergent);
+		System.out.print(timings.report());
+	}
+}
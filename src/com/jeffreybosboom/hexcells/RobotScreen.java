@@ -0,0 +1,102 @@
+package com.jeffreybosboom.hexcells;
+
+import com.google.common.io.CharStreams;
+import java.awt.AWTException;
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.Robot;
+import java.awt.event.InputEvent;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A Screen backed by the real game, using {@link Robot} for capture and input
+ * and cmdow.exe to find the game window.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/19/2026
+ */
+public final class RobotScreen implements Screen {
+	/**
+	 * The delay between input events.  Robot's auto-delay applies after every
+	 * event, including the last one of a click, so we delay explicitly instead.
+	 */
+	private static final int INPUT_DELAY_MILLIS = 10;
+	/**
+	 * The game's icon in the window's top-left corner, which we cover up lest
+	 * we think it's a hex.
+	 */
+	private static final Rectangle ICON = new Rectangle(0, 0, 32, 32);
+	private final Robot robot;
+	private final Rectangle hexcellsRect;
+	public RobotScreen() throws AWTException, InterruptedException, IOException {
+		this.robot = new Robot();
+		robot.setAutoDelay(0);
+		this.hexcellsRect = locateHexcells();
+	}
+
+	private static Rectangle locateHexcells() throws InterruptedException, IOException {
+		ProcessBuilder pb = new ProcessBuilder("cmdow.exe Hexcells /B /P".split(" "));
+		Process p = pb.start();
+		p.waitFor();
+		Reader r = new InputStreamReader(p.getInputStream());
+		List<String> readLines = CharStreams.readLines(r);
+		if (readLines.size() != 1)
+			throw new RuntimeException(readLines.toString());
+		String[] fields = readLines.get(0).trim().split("\\h+");
+		System.out.println(Arrays.toString(fields));
+		//These include window decorations, whose size varies by computer, but
+		//they shouldn't affect our parsing.
+		int windowLeft = Integer.parseInt(fields[fields.length-6]);
+		int windowTop = Integer.parseInt(fields[fields.length-5]);
+		int windowWidth = Integer.parseInt(fields[fields.length-4]);
+		int windowHeight = Integer.parseInt(fields[fields.length-3]);
+		return new Rectangle(windowLeft, windowTop, windowWidth, windowHeight);
+	}
+
+	@Override
+	public BufferedImage capture() {
+		return capture(new Rectangle(0, 0, hexcellsRect.width, hexcellsRect.height));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Robot always captures into a new image, so this can't reuse frames.
+	 */
+	@Override
+	public BufferedImage capture(Rectangle region) {
+		Rectangle screenRegion = new Rectangle(region);
+		screenRegion.translate(hexcellsRect.x, hexcellsRect.y);
+		BufferedImage capture = robot.createScreenCapture(screenRegion);
+		Rectangle icon = ICON.intersection(region);
+		int white = Color.WHITE.getRGB();
+		for (int y = icon.y; y < icon.y + icon.height; ++y)
+			for (int x = icon.x; x < icon.x + icon.width; ++x)
+				capture.setRGB(x - region.x, y - region.y, white);
+		return capture;
+	}
+
+	@Override
+	public void leftClick(Region.Point p) {
+		click(p, InputEvent.BUTTON1_DOWN_MASK);
+	}
+
+	@Override
+	public void rightClick(Region.Point p) {
+		click(p, InputEvent.BUTTON3_DOWN_MASK);
+	}
+
+	private void click(Region.Point p, int buttons) {
+		int x = p.x + hexcellsRect.x, y = p.y + hexcellsRect.y;
+		if (!hexcellsRect.contains(x, y)) throw new RuntimeException();
+		robot.mouseMove(x, y);
+		robot.delay(INPUT_DELAY_MILLIS);
+		robot.mousePress(buttons);
+		robot.delay(INPUT_DELAY_MILLIS);
+		robot.mouseRelease(buttons);
+	}
+}
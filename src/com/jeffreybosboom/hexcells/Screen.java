@@ -0,0 +1,38 @@
+package com.jeffreybosboom.hexcells;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * Where frames come from and where clicks go.  All coordinates are relative to
+ * the top-left corner of the game window.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/19/2026
+ */
+public interface Screen {
+	/**
+	 * Captures the entire game window.
+	 * @return a newly-allocated image the caller may modify
+	 */
+	public BufferedImage capture();
+	/**
+	 * Captures part of the game window.
+	 * @param region the region to capture
+	 * @return a newly-allocated image the caller may modify
+	 */
+	public BufferedImage capture(Rectangle region);
+	/**
+	 * Captures a frame to parse, starting a new round: the given part of the
+	 * game window (or all of it), into the given image if this screen can
+	 * and the image is the right size, to save allocating a frame every
+	 * round.
+	 * @param region the region to capture, or null for the entire window
+	 * @param into an image to reuse, or null
+	 * @return the frame, which may be {@code into}
+	 */
+	public default BufferedImage captureFrame(Rectangle region, BufferedImage into) {
+		return region == null ? capture() : capture(region);
+	}
+	public void leftClick(Region.Point p);
+	public void rightClick(Region.Point p);
+}
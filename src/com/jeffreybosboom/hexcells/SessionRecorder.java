@@ -0,0 +1,215 @@
+package com.jeffreybosboom.hexcells;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records a play session (each round's capture, the puzzle parsed from it,
+ * and the deductions clicked) to an append-only, memory-mapped file, for
+ * replaying with {@link ReplayScreen}.
+ * <p>
+ * The file starts with {@link #MAGIC}, followed by records of a tag byte, a
+ * varint payload length and the payload.  A zero tag (or the end of the file)
+ * ends the records; the file is extended in {@link #WINDOW_BYTES} chunks, so
+ * there is usually zero padding after the last record.  Opening an existing
+ * session file appends to it.  Records are:
+ * <ul>
+ * <li>{@link #FRAME}: the frame's origin in the game window, width and height
+ * (varints), a byte that is {@link #KEYFRAME} or {@link #DELTA_FRAME}, then
+ * runs of pixels, each a varint run length and three bytes of RGB.  Delta
+ * frames store each pixel XORed with the previous frame's, so the unchanged
+ * parts of the board are a few long runs of zero.
+ * <li>{@link #PUZZLE}: the parsed puzzle in {@link PuzzleFormat}'s binary
+ * format.
+ * <li>{@link #DEDUCTIONS}: a varint count, then for each deduction the cell
+ * (zigzag varints x and z), its state (a byte) and the click point (varints
+ * x and y).
+ * </ul>
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/19/2026
+ */
+public final class SessionRecorder implements Closeable {
+	public static final int MAGIC = 0x48585332; //"HXS2"
+	static final int END = 0, FRAME = 1, PUZZLE = 2, DEDUCTIONS = 3;
+	static final int KEYFRAME = 0, DELTA_FRAME = 1;
+	private static final int WINDOW_BYTES = 16 << 20;
+	private final FileChannel channel;
+	private MappedByteBuffer window;
+	//the file offset of the start of the window
+	private long windowStart;
+	private final RecordBuffer record = new RecordBuffer();
+	private int[] previous, current = new int[0];
+	private int previousX, previousY, previousWidth, previousHeight;
+
+	/**
+	 * A byte buffer we can write into the mapping without copying.
+	 */
+	private static final class RecordBuffer extends ByteArrayOutputStream {
+		ByteBuffer contents() {
+			return ByteBuffer.wrap(buf, 0, count);
+		}
+	}
+
+	public SessionRecorder(Path file) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		long size = channel.size();
+		if (size == 0) {
+			map(0, WINDOW_BYTES);
+			window.putInt(MAGIC);
+		} else {
+			checkArgument(size >= 4 && size <= Integer.MAX_VALUE, "%s is not a session file", file);
+			map(0, (int)size);
+			checkArgument(window.getInt() == MAGIC, "%s is not a session file", file);
+			//skip the existing records, stopping before any cut short by a crash
+			while (window.hasRemaining()) {
+				int start = window.position(), end;
+				try {
+					end = window.get() == END ? -1 : readVarint(window) + window.position();
+				} catch (BufferUnderflowException ex) {
+					end = -1;
+				}
+				if (end < 0 || end > window.limit()) {
+					window.position(start);
+					break;
+				}
+				window.position(end);
+			}
+		}
+	}
+
+	/**
+	 * Records a frame captured for parsing.  Only the first frame, and frames
+	 * of a different extent than the last, are stored whole.
+	 * @param image the frame
+	 * @param x the x coordinate of the frame's origin in the game window
+	 * @param y the y coordinate of the frame's origin in the game window
+	 */
+	public void recordFrame(BufferedImage image, int x, int y) throws IOException {
+		int width = image.getWidth(), height = image.getHeight();
+		if (current.length < width * height)
+			current = new int[width * height];
+		image.getRGB(0, 0, width, height, current, 0, width);
+		boolean delta = previous != null && previousX == x && previousY == y
+				&& previousWidth == width && previousHeight == height;
+
+		record.reset();
+		PuzzleFormat.writeVarint(x, record);
+		PuzzleFormat.writeVarint(y, record);
+		PuzzleFormat.writeVarint(width, record);
+		PuzzleFormat.writeVarint(height, record);
+		record.write(delta ? DELTA_FRAME : KEYFRAME);
+		int pixels = width * height;
+		for (int i = 0; i < pixels;) {
+			int value = pixel(i, delta), run = 1;
+			while (i + run < pixels && pixel(i + run, delta) == value)
+				++run;
+			PuzzleFormat.writeVarint(run, record);
+			record.write(value >>> 16);
+			record.write(value >>> 8);
+			record.write(value);
+			i += run;
+		}
+		append(FRAME);
+
+		int[] swap = previous;
+		previous = current;
+		current = swap != null ? swap : new int[0];
+		previousX = x;
+		previousY = y;
+		previousWidth = width;
+		previousHeight = height;
+	}
+
+	private int pixel(int i, boolean delta) {
+		int rgb = current[i] & 0xFFFFFF;
+		return delta ? rgb ^ (previous[i] & 0xFFFFFF) : rgb;
+	}
+
+	public void recordPuzzle(Puzzle puzzle) throws IOException {
+		record.reset();
+		PuzzleFormat.writeBinary(puzzle, record);
+		append(PUZZLE);
+	}
+
+	/**
+	 * Records a round's deductions and where they were clicked.
+	 * @param deductions the deduced cells and their states, in the order they
+	 * were deduced
+	 * @param hexCenters the click point for each cell
+	 */
+	public void recordDeductions(List<Pair<Coordinate, CellState>> deductions, Map<Coordinate, Region.Point> hexCenters) throws IOException {
+		record.reset();
+		PuzzleFormat.writeVarint(deductions.size(), record);
+		for (Pair<Coordinate, CellState> d : deductions) {
+			Region.Point p = hexCenters.get(d.first);
+			PuzzleFormat.writeVarint(PuzzleFormat.zigzag(d.first.x()), record);
+			PuzzleFormat.writeVarint(PuzzleFormat.zigzag(d.first.z()), record);
+			record.write(d.second.ordinal());
+			PuzzleFormat.writeVarint(p.x, record);
+			PuzzleFormat.writeVarint(p.y, record);
+		}
+		append(DEDUCTIONS);
+	}
+
+	private void append(int tag) throws IOException {
+		checkState(window != null, "closed");
+		ByteBuffer payload = record.contents();
+		int length = payload.remaining();
+		int needed = 1 + 5 + length;
+		if (window.remaining() < needed)
+			map(windowStart + window.position(), Math.max(WINDOW_BYTES, needed));
+		window.put((byte)tag);
+		writeVarint(length, window);
+		window.put(payload);
+	}
+
+	private void map(long start, int size) throws IOException {
+		if (window != null)
+			window.force();
+		window = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+		windowStart = start;
+	}
+
+	/**
+	 * Flushes the mapped records to the file and closes it.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (window == null) return;
+		window.force();
+		window = null;
+		channel.close();
+	}
+
+	private static void writeVarint(int value, ByteBuffer out) {
+		while ((value & ~0x7F) != 0) {
+			out.put((byte)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.put((byte)value);
+	}
+
+	static int readVarint(ByteBuffer in) {
+		int value = 0;
+		for (int shift = 0; ; shift += 7) {
+			checkArgument(shift < 32, "varint too long");
+			int b = in.get() & 0xFF;
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package com.jeffreybosboom.hexcells;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Waits for the game to stop animating (particle effects, cells flipping)
+ * after a round of clicks.  Frames are captured on a background thread and
+ * compared against the previous frame; we proceed once enough consecutive
+ * frames are identical within a per-channel tolerance, or when the ceiling
+ * elapses, whichever comes first.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/19/2026
+ */
+public final class SettleWaiter {
+	private static final int CHANNEL_TOLERANCE = 8;
+	private static final int STABLE_FRAMES_REQUIRED = 3;
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(
+			new ThreadFactoryBuilder().setDaemon(true).setNameFormat("settle-waiter-%d").build());
+	/**
+	 * Clicks take a frame or two to register, so frames captured immediately
+	 * after clicking can match each other before the animation has started.
+	 */
+	private final long minimumMillis;
+	private final long pollMillis;
+	private final long ceilingMillis;
+	public SettleWaiter(long minimumMillis, long pollMillis, long ceilingMillis) {
+		checkArgument(0 <= minimumMillis && minimumMillis <= ceilingMillis, "%s %s", minimumMillis, ceilingMillis);
+		checkArgument(pollMillis >= 0, pollMillis);
+		this.minimumMillis = minimumMillis;
+		this.pollMillis = pollMillis;
+		this.ceilingMillis = ceilingMillis;
+	}
+
+	/**
+	 * Blocks until consecutive frames from the given supplier are stable or
+	 * the ceiling elapses.  The supplier is called from a background thread,
+	 * so it should capture the smallest region that shows the board.
+	 * @param frames supplies frames of the region to watch
+	 * @return true if the frames settled, false if we hit the ceiling
+	 */
+	public boolean awaitSettled(Supplier<BufferedImage> frames) {
+		long start = System.nanoTime();
+		Future<?> watcher = executor.submit(() -> watch(frames, start));
+		try {
+			Uninterruptibles.getUninterruptibly(watcher, ceilingMillis, TimeUnit.MILLISECONDS);
+			return true;
+		} catch (TimeoutException ex) {
+			watcher.cancel(true);
+			return false;
+		} catch (ExecutionException ex) {
+			throw new RuntimeException(ex.getCause());
+		}
+	}
+
+	private void watch(Supplier<BufferedImage> frames, long start) {
+		long minimumEnd = start + TimeUnit.MILLISECONDS.toNanos(minimumMillis);
+		int[] previous = null, current = null;
+		int stableFrames = 0;
+		while (!Thread.currentThread().isInterrupted()) {
+			BufferedImage frame = frames.get();
+			int width = frame.getWidth(), height = frame.getHeight();
+			if (current == null || current.length != width * height)
+				current = new int[width * height];
+			frame.getRGB(0, 0, width, height, current, 0, width);
+
+			if (previous != null && previous.length == current.length && similar(previous, current))
+				++stableFrames;
+			else
+				stableFrames = 1;
+			if (stableFrames >= STABLE_FRAMES_REQUIRED && System.nanoTime() >= minimumEnd)
+				return;
+
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+			try {
+				Thread.sleep(pollMillis);
+			} catch (InterruptedException ex) {
+				return;
+			}
+		}
+	}
+
+	private static boolean similar(int[] a, int[] b) {
+		for (int i = 0; i < a.length; ++i) {
+			int x = a[i], y = b[i];
+			if (x == y) continue;
+			if (Math.abs(((x >> 16) & 0xFF) - ((y >> 16) & 0xFF)) > CHANNEL_TOLERANCE ||
+					Math.abs(((x >> 8) & 0xFF) - ((y >> 8) & 0xFF)) > CHANNEL_TOLERANCE ||
+					Math.abs((x & 0xFF) - (y & 0xFF)) > CHANNEL_TOLERANCE)
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,341 @@
+package com.jeffreybosboom.hexcells;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import com.google.common.collect.ImmutableMap;
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IntSummaryStatistics;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An in-process stand-in for the game, for running and timing the full
+ * capture-parse-deduce-click loop without the game or a display.  Renders the
+ * board the way the game does (as far as our parser cares), reveals cells when
+ * they're clicked correctly and counts mistakes otherwise.
+ * <p>
+ * The solution puzzle's cell constraints are shown when their center is
+ * revealed; its column (x-axis) constraints are always shown.  Diagonal axis
+ * constraints are not rendered.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/19/2026
+ */
+public final class SimulatedGame implements Screen {
+	private static final int HEX_SIZE = 28, HEX_GAP = 4, BORDER_WIDTH = 4, FONT_SIZE = 22;
+	//room for board-edge constraints and the parser's windows around them
+	private static final int MARGIN = 128;
+	private static final double COLUMN_PITCH = 1.5 * (HEX_SIZE + HEX_GAP),
+			ROW_PITCH = Math.sqrt(3) * (HEX_SIZE + HEX_GAP);
+	private final Puzzle solution;
+	private final ImmutableMap<Coordinate, CellConstraint> hints;
+	private final ImmutableMap<Coordinate, Region.Point> centers;
+	private final int width, height;
+	//guarded by this
+	private final Set<Coordinate> revealed;
+	private int mistakes, captures;
+	public SimulatedGame(Puzzle solution, Set<Coordinate> revealed) {
+		checkArgument(solution.isSolved());
+		checkArgument(revealed.stream().allMatch(c -> solution.at(c) != null), revealed);
+		this.solution = solution;
+		this.hints = ImmutableMap.copyOf(solution.constraints()
+				.filter(CellConstraint.class::isInstance)
+				.map(CellConstraint.class::cast)
+				.collect(Collectors.toMap(CellConstraint::center, c -> c)));
+		this.revealed = new HashSet<>(revealed);
+
+		//include the row above the board so column constraints are in bounds
+		IntSummaryStatistics xs = solution.cells()
+				.mapToInt(c -> (int)Math.round(c.x() * COLUMN_PITCH)).summaryStatistics();
+		IntSummaryStatistics ys = solution.cells().flatMap(c -> Stream.of(c, c.up()))
+				.mapToInt(c -> (int)Math.round((c.z() + c.x() / 2.0) * ROW_PITCH)).summaryStatistics();
+		ImmutableMap.Builder<Coordinate, Region.Point> centersBuilder = ImmutableMap.builder();
+		solution.cells().forEachOrdered(c -> centersBuilder.put(c, new Region.Point(
+				MARGIN + (int)Math.round(c.x() * COLUMN_PITCH) - xs.getMin(),
+				MARGIN + (int)Math.round((c.z() + c.x() / 2.0) * ROW_PITCH) - ys.getMin())));
+		this.centers = centersBuilder.build();
+		this.width = xs.getMax() - xs.getMin() + 2 * MARGIN;
+		this.height = ys.getMax() - ys.getMin() + 2 * MARGIN;
+	}
+
+	/**
+	 * Generates a random hexagon-shaped board of the given radius, revealing
+	 * just enough cells that {@link Deducer} can solve it from the start.
+	 * @param random the source of randomness
+	 * @param radius the board radius (0 is a single cell)
+	 * @return a new game
+	 */
+	public static SimulatedGame random(Random random, int radius) {
+		Map<Coordinate, CellState> cells = new LinkedHashMap<>();
+		for (int x = -radius; x <= radius; ++x)
+			for (int z = Math.max(-radius, -x - radius); z <= Math.min(radius, -x + radius); ++z)
+				cells.put(Coordinate.at(x, -x - z, z), random.nextInt(5) < 2 ? CellState.PRESENT : CellState.ABSENT);
+
+		Set<Constraint> constraints = new LinkedHashSet<>();
+		for (Map.Entry<Coordinate, CellState> e : cells.entrySet()) {
+			if (e.getValue() != CellState.ABSENT) continue;
+			List<Coordinate> region = e.getKey().neighbors()
+					.filter(cells::containsKey)
+					.collect(Collectors.toList());
+			List<Coordinate> present = region.stream()
+					.filter(c -> cells.get(c) == CellState.PRESENT)
+					.collect(Collectors.toList());
+			boolean marked = present.size() >= 2 && random.nextBoolean();
+			boolean contiguous = isContiguous(present);
+			constraints.add(new CellConstraint(e.getKey(), region, present.size(), marked && contiguous, marked && !contiguous));
+		}
+		for (int x = -radius; x <= radius; ++x) {
+			if (random.nextInt(3) != 0) continue;
+			final int x_ = x;
+			List<Coordinate> region = cells.keySet().stream()
+					.filter(c -> c.x() == x_)
+					.sorted(Comparator.comparingInt(Coordinate::z))
+					.collect(Collectors.toList());
+			List<Integer> present = new ArrayList<>();
+			for (int i = 0; i < region.size(); ++i)
+				if (cells.get(region.get(i)) == CellState.PRESENT)
+					present.add(i);
+			//the recognizer only knows single digits
+			if (present.size() > 9) continue;
+			boolean marked = present.size() >= 2 && random.nextBoolean();
+			boolean contiguous = present.size() >= 2 && present.get(present.size() - 1) - present.get(0) + 1 == present.size();
+			constraints.add(new AxisConstraint(Coordinate::x, Coordinate::z, region, present.size(), marked && contiguous, marked && !contiguous));
+		}
+		Puzzle solution = new Puzzle(cells, constraints);
+
+		//Reveal random cells until the deducer can take it from there.
+		List<Coordinate> order = new ArrayList<>(cells.keySet());
+		Collections.shuffle(order, random);
+		Set<Coordinate> initial = new HashSet<>();
+		while (true) {
+			Set<Coordinate> known = new HashSet<>(initial);
+			while (true) {
+				Puzzle p = visiblePuzzle(solution, known);
+				Puzzle d = Deducer.deduce(p);
+				List<Coordinate> deduced = d.cells()
+						.filter(c -> d.isKnown(c) && p.isUnknown(c))
+						.collect(Collectors.toList());
+				if (deduced.isEmpty()) break;
+				known.addAll(deduced);
+			}
+			if (known.size() == cells.size()) break;
+			order.stream().filter(c -> !known.contains(c)).findFirst().ifPresent(initial::add);
+		}
+		return new SimulatedGame(solution, initial);
+	}
+
+	private static boolean isContiguous(List<Coordinate> present) {
+		if (present.isEmpty()) return true;
+		Set<Coordinate> closed = new HashSet<>();
+		Deque<Coordinate> frontier = new ArrayDeque<>();
+		frontier.add(present.get(0));
+		while (!frontier.isEmpty()) {
+			Coordinate c = frontier.pop();
+			if (closed.add(c))
+				c.neighbors().filter(present::contains).forEachOrdered(frontier::add);
+		}
+		return closed.size() == present.size();
+	}
+
+	/**
+	 * Returns the puzzle as the player sees it with the given cells revealed.
+	 */
+	private static Puzzle visiblePuzzle(Puzzle solution, Set<Coordinate> revealed) {
+		Map<Coordinate, CellState> cells = new LinkedHashMap<>();
+		solution.cells().forEachOrdered(c -> cells.put(c, revealed.contains(c) ? solution.at(c) : CellState.UNKNOWN));
+		Set<Constraint> constraints = solution.constraints()
+				.filter(c -> !(c instanceof CellConstraint) || revealed.contains(((CellConstraint)c).center()))
+				.filter(c -> !(c instanceof AxisConstraint) || isColumn((AxisConstraint)c))
+				.collect(Collectors.toCollection(LinkedHashSet::new));
+		return new Puzzle(cells, constraints);
+	}
+
+	private static boolean isColumn(AxisConstraint c) {
+		//a coordinate whose components are all distinct tells us which one is extracted
+		Coordinate probe = Coordinate.at(1, 2, -3);
+		return c.axisExtractor().applyAsInt(probe) == probe.x();
+	}
+
+	/**
+	 * Returns the solved board.
+	 */
+	Puzzle solution() {
+		return solution;
+	}
+
+	public synchronized Puzzle visiblePuzzle() {
+		return visiblePuzzle(solution, revealed);
+	}
+
+	public synchronized boolean isSolved() {
+		return revealed.size() == solution.cells().count();
+	}
+
+	public synchronized int mistakes() {
+		return mistakes;
+	}
+
+	/**
+	 * Returns the number of frames captured for parsing, which is the number
+	 * of rounds played.
+	 */
+	public synchronized int captures() {
+		return captures;
+	}
+
+	@Override
+	public synchronized BufferedImage capture() {
+		return captureFrame(null, null);
+	}
+
+	@Override
+	public synchronized BufferedImage capture(Rectangle region) {
+		return render(region, null);
+	}
+
+	@Override
+	public synchronized BufferedImage captureFrame(Rectangle region, BufferedImage into) {
+		++captures;
+		return render(region != null ? region : new Rectangle(0, 0, width, height), into);
+	}
+
+	@Override
+	public void leftClick(Region.Point p) {
+		click(p, CellState.PRESENT);
+	}
+
+	@Override
+	public void rightClick(Region.Point p) {
+		click(p, CellState.ABSENT);
+	}
+
+	private synchronized void click(Region.Point p, CellState guess) {
+		Coordinate cell = null;
+		for (Map.Entry<Coordinate, Region.Point> e : centers.entrySet()) {
+			int dx = e.getValue().x - p.x, dy = e.getValue().y - p.y;
+			if (dx * dx + dy * dy <= HEX_SIZE * HEX_SIZE)
+				cell = e.getKey();
+		}
+		if (cell == null || revealed.contains(cell)) return;
+		if (solution.at(cell) == guess)
+			revealed.add(cell);
+		else
+			++mistakes;
+	}
+
+	/**
+	 * Renders the given region of the board into the given image, if it's
+	 * the region's size, or a new one.
+	 */
+	private BufferedImage render(Rectangle region, BufferedImage into) {
+		BufferedImage image = into != null && into.getWidth() == region.width && into.getHeight() == region.height
+				? into : new BufferedImage(region.width, region.height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, region.width, region.height);
+		g.translate(-region.x, -region.y);
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g.setFont(Recognizer.HARABARA.deriveFont((float)FONT_SIZE));
+
+		solution.constraints()
+				.filter(c -> c instanceof AxisConstraint && isColumn((AxisConstraint)c))
+				.forEachOrdered(c -> {
+					Region.Point top = centers.get(c.region().get(0));
+					drawCentered(g, label(c), top.x, top.y - (int)Math.round(ROW_PITCH), Color.BLACK);
+				});
+
+		for (Map.Entry<Coordinate, Region.Point> e : centers.entrySet()) {
+			Coordinate c = e.getKey();
+			Region.Point center = e.getValue();
+			CellState state = revealed.contains(c) ? solution.at(c) : CellState.UNKNOWN;
+			g.setColor(Colors.HEXAGON_BORDER_COLORS.inverse().get(state));
+			g.fillPolygon(hexagon(center, HEX_SIZE));
+			g.setColor(Colors.HEXAGON_INTERIOR_COLORS.inverse().get(state));
+			g.fillPolygon(hexagon(center, HEX_SIZE - BORDER_WIDTH));
+			if (state != CellState.UNKNOWN && hints.containsKey(c))
+				drawCentered(g, label(hints.get(c)), center.x, center.y, Color.WHITE);
+		}
+		g.dispose();
+		return image;
+	}
+
+	static Polygon hexagon(Region.Point center, int size) {
+		Polygon polygon = new Polygon();
+		for (int i = 0; i < 6; ++i)
+			polygon.addPoint(center.x + (int)Math.round(size * Math.cos(i * Math.PI / 3)),
+					center.y + (int)Math.round(size * Math.sin(i * Math.PI / 3)));
+		return polygon;
+	}
+
+	private static String label(Constraint c) {
+		if (c.isContiguous())
+			return "{" + c.target() + "}";
+		if (c.isDiscontiguous())
+			return "-" + c.target() + "-";
+		return Integer.toString(c.target());
+	}
+
+	static void drawCentered(Graphics2D g, String string, int x, int y, Color color) {
+		FontMetrics metrics = g.getFontMetrics();
+		g.setColor(color);
+		g.drawString(string, x - metrics.stringWidth(string) / 2,
+				y + (metrics.getAscent() - metrics.getDescent()) / 2);
+	}
+
+	/**
+	 * Plays random games concurrently and reports throughput and per-stage
+	 * latencies.
+	 * @param args [sessions [games per session [board radius]]]
+	 */
+	public static void main(String[] args) throws Throwable {
+		int sessions = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		int gamesPerSession = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int radius = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+		AtomicInteger solved = new AtomicInteger(), rounds = new AtomicInteger(), mistakes = new AtomicInteger();
+		StageTimings timings = new StageTimings();
+		ExecutorService executor = Executors.newFixedThreadPool(sessions);
+		long start = System.nanoTime();
+		List<Future<?>> futures = new ArrayList<>();
+		for (int s = 0; s < sessions; ++s) {
+			final long seed = s;
+			futures.add(executor.submit(() -> {
+				Random random = new Random(seed);
+				for (int i = 0; i < gamesPerSession; ++i) {
+					SimulatedGame game = random(random, radius);
+					Effector effector = new Effector(game, new SettleWaiter(0, 0, 3000), timings);
+					if (effector.playPuzzle() && game.isSolved())
+						solved.incrementAndGet();
+					rounds.addAndGet(game.captures());
+					mistakes.addAndGet(game.mistakes());
+				}
+			}));
+		}
+		for (Future<?> f : futures)
+			f.get();
+		executor.shutdown();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.format("%d/%d games solved, %d mistakes, %d rounds in %.2f s (%.2f rounds/s)%n",
+				solved.get(), sessions * gamesPerSession, mistakes.get(), rounds.get(), seconds, rounds.get() / seconds);
+		System.out.print(timings.report());
+	}
+}
@@ -0,0 +1,248 @@
+package com.jeffreybosboom.hexcells;
+
+import com.google.common.collect.ImmutableMap;
+import com.sun.management.ThreadMXBean;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * Deduces puzzles round after round without allocating per deduction.  The
+ * cell state masks and the rule order are kept between solves and reused
+ * whenever the next board is the same size, each puzzle's index is derived
+ * from the last one's when it's the same board (parsed afresh each round, so
+ * otherwise indexed from scratch), and the rules keep their scratch buffers
+ * per thread, so once warmed up a solve allocates only its result (and
+ * whatever the listener does).  Boards large enough to be split into
+ * components and deduced in parallel still allocate per component.
+ * <p>
+ * A context is not thread-safe; use one per deducing thread.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/19/2026
+ */
+public final class SolverContext {
+	private final BoardState state = BoardState.empty();
+	private final Deducer.RuleStats[] order = Deducer.RULES.toArray(new Deducer.RuleStats[0]);
+	private final double[] cost = new double[order.length];
+	//the last puzzle's index, to derive the next one's from
+	private BoardIndex index;
+
+	public Puzzle deduce(Puzzle puzzle, BiConsumer<Coordinate, CellState> listener) {
+		return deduce(puzzle, ImmutableMap.of(), listener);
+	}
+
+	/**
+	 * Deduces as much as possible about the given puzzle, passing each newly
+	 * known cell to the given listener as soon as it's deduced, so callers can
+	 * act on deductions before the fixpoint is reached.
+	 * @param puzzle the puzzle
+	 * @param given cells already known to have the given states, which are
+	 * marked before deducing (and not passed to the listener)
+	 * @param listener called with each deduced cell and its state, or null
+	 * @return the puzzle with the given cells and all deductions applied
+	 * @see #deduceUntil(Puzzle, Map, BiConsumer, long)
+	 */
+	public Puzzle deduce(Puzzle puzzle, Map<Coordinate, CellState> given, BiConsumer<Coordinate, CellState> listener) {
+		load(puzzle, given);
+		run(listener, OptionalLong.empty(), null);
+		return state.toPuzzle(puzzle);
+	}
+
+	/**
+	 * Deduces as much as possible about the given puzzle before the given
+	 * deadline, passing each newly known cell to the given listener as soon
+	 * as it's deduced.  If the deadline passes, returns the deductions found
+	 * so far, all of which are sound.  The deadline is checked between rule
+	 * passes, so this may overrun it by one pass of the slowest rule.
+	 * <p>
+	 * The unknown cells of large boards are first split into components that
+	 * share no active constraint, which are deduced concurrently (on the
+	 * common fork-join pool, or the pool we're running in) and merged, so the
+	 * listener may be called from several threads, though never concurrently.
+	 * @param puzzle the puzzle
+	 * @param given cells already known to have the given states, which are
+	 * marked before deducing (and not passed to the listener)
+	 * @param listener called with each deduced cell and its state, or null
+	 * @param deadline the {@link System#nanoTime()} reading after which to
+	 * stop
+	 * @return the puzzle with the given cells and the deductions found, and
+	 * whether deduction reached its fixpoint
+	 */
+	public Deducer.Result deduceUntil(Puzzle puzzle, Map<Coordinate, CellState> given, BiConsumer<Coordinate, CellState> listener, long deadline) {
+		return deduceUntil(puzzle, given, listener, OptionalLong.of(deadline), null);
+	}
+
+	/**
+	 * Deduces as much as possible about the given puzzle, as
+	 * {@link #deduceUntil(Puzzle, Map, BiConsumer, long)}, but stopping only
+	 * if there's a deadline and it passes or if the given flag is set (from
+	 * any thread), which is also checked between rule passes.
+	 * @param puzzle the puzzle
+	 * @param given cells already known to have the given states, which are
+	 * marked before deducing (and not passed to the listener)
+	 * @param listener called with each deduced cell and its state, or null
+	 * @param deadline the {@link System#nanoTime()} reading after which to
+	 * stop, if any
+	 * @param stop set to stop early, or null
+	 * @return the puzzle with the given cells and the deductions found, and
+	 * whether deduction reached its fixpoint
+	 */
+	public Deducer.Result deduceUntil(Puzzle puzzle, Map<Coordinate, CellState> given, BiConsumer<Coordinate, CellState> listener, OptionalLong deadline, AtomicBoolean stop) {
+		load(puzzle, given);
+		boolean complete = run(listener, deadline, stop);
+		return new Deducer.Result(state.toPuzzle(puzzle), complete);
+	}
+
+	private void load(Puzzle puzzle, Map<Coordinate, CellState> given) {
+		index = puzzle.index(index);
+		state.load(puzzle);
+		if (!given.isEmpty())
+			for (Map.Entry<Coordinate, CellState> e : given.entrySet())
+				if (e.getValue() == CellState.PRESENT)
+					state.markPresent(index.indexOf(e.getKey()));
+				else if (e.getValue() == CellState.ABSENT)
+					state.markAbsent(index.indexOf(e.getKey()));
+		sortRules();
+	}
+
+	/**
+	 * Deduces the loaded state.
+	 * @return true iff deduction reached its fixpoint
+	 */
+	private boolean run(BiConsumer<Coordinate, CellState> listener, OptionalLong deadline, AtomicBoolean stop) {
+		List<long[]> components;
+		if (state.index().cellCount() < Deducer.PARALLEL_THRESHOLD || (components = state.components()).size() < 2) {
+			state.listen(listener);
+			boolean complete = Deducer.deduce(state, order, deadline, stop);
+			state.listen(null);
+			return complete;
+		}
+		Object lock = new Object();
+		BiConsumer<Coordinate, CellState> serialized = listener == null ? null :
+				(c, s) -> {
+					synchronized (lock) {
+						listener.accept(c, s);
+					}
+				};
+		AtomicBoolean complete = new AtomicBoolean(true);
+		List<BoardState> deduced = components.parallelStream()
+				.map(component -> {
+					BoardState restricted = state.restrictedTo(component);
+					restricted.listen(serialized);
+					if (!Deducer.deduce(restricted, order, deadline, stop))
+						complete.set(false);
+					restricted.listen(null);
+					return restricted;
+				})
+				.collect(Collectors.toList());
+		deduced.forEach(state::merge);
+		return complete.get();
+	}
+
+	/**
+	 * Sorts the rules by their yields so far, snapshotted first as other
+	 * threads may update them while we sort.
+	 */
+	private void sortRules() {
+		for (int i = 0; i < order.length; ++i)
+			cost[i] = order[i].nanosPerDeduction();
+		for (int i = 1; i < order.length; ++i) {
+			Deducer.RuleStats rule = order[i];
+			double c = cost[i];
+			int j = i;
+			for (; j > 0 && cost[j - 1] > c; --j) {
+				order[j] = order[j - 1];
+				cost[j] = cost[j - 1];
+			}
+			order[j] = rule;
+			cost[j] = c;
+		}
+	}
+
+	/**
+	 * Checks that steady-state solves don't allocate per deduction: plays
+	 * random simulated boards round by round, as the play loop does, parsing
+	 * each round's puzzle afresh before solving it with one context, measures
+	 * the bytes this thread allocates solving, and exits with status 1 if that
+	 * exceeds the limit.  A board's first round indexes it from scratch, so
+	 * only later rounds are held to the limit, which by default allows for
+	 * building the solved puzzle (about sixty bytes a cell), deriving the
+	 * board's index from the last round's (a kilobyte, plus eight bytes a
+	 * cell for its per-cell tables) and compiling the constraints revealed
+	 * since, and little else.  Run by the build's {@code test} target.
+	 * <p>
+	 * Usage: {@code SolverContext [board radius [limit in bytes per solve]]}
+	 */
+	public static void main(String[] args) throws IOException {
+		int radius = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+		Random random = new Random(0);
+		ByteArrayOutputStream rounds = new ByteArrayOutputStream();
+		PuzzleFormat.writeBinaryHeader(rounds);
+		//the number of constraints revealed since the last round, or -1 for first rounds
+		List<Integer> revealedConstraints = new ArrayList<>();
+		int cells = 0, deductions = 0;
+		for (int i = 0; i < 16; ++i) {
+			SimulatedGame game = SimulatedGame.random(random, radius);
+			Puzzle solution = game.solution();
+			Set<Coordinate> revealed = new HashSet<>();
+			long lastConstraints = -1;
+			for (Puzzle visible = game.visiblePuzzle(); !visible.isSolved();
+					visible = new SimulatedGame(solution, revealed).visiblePuzzle()) {
+				PuzzleFormat.writeBinary(visible, rounds);
+				long constraints = visible.constraints().count();
+				revealedConstraints.add(lastConstraints < 0 ? -1 : (int)(constraints - lastConstraints));
+				lastConstraints = constraints;
+				Puzzle deduced = Deducer.deduce(visible);
+				deduced.cells().filter(deduced::isKnown).forEach(revealed::add);
+				deductions += deduced.cells().filter(visible::isUnknown).filter(deduced::isKnown).count();
+			}
+			cells = (int)solution.cells().count();
+		}
+		byte[] bytes = rounds.toByteArray();
+
+		ThreadMXBean threads = (ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		SolverContext context = new SolverContext();
+		//warm up (and compile), then measure; parsing isn't measured
+		int repetitions = 2000, firstSolves = 0, laterSolves = 0;
+		long firstBytes = 0, laterBytes = 0, allowedBytes = 0;
+		for (int r = 0; r < repetitions; ++r) {
+			List<Puzzle> parsed = PuzzleFormat.readBinary(new ByteArrayInputStream(bytes)).collect(Collectors.toList());
+			for (int i = 0; i < parsed.size(); ++i) {
+				long before = threads.getThreadAllocatedBytes(thread);
+				context.deduce(parsed.get(i), null);
+				long allocated = threads.getThreadAllocatedBytes(thread) - before;
+				if (r < repetitions / 2) continue;
+				if (revealedConstraints.get(i) < 0) {
+					firstBytes += allocated;
+					++firstSolves;
+				} else {
+					laterBytes += allocated;
+					++laterSolves;
+					allowedBytes += args.length > 1 ? Long.parseLong(args[1])
+							: 1024 + 72L * cells + 384L * revealedConstraints.get(i);
+				}
+			}
+		}
+
+		double perSolve = laterBytes / (double)laterSolves, limit = allowedBytes / (double)laterSolves;
+		System.out.format("%d-cell boards: %.0f bytes per first-round solve, %.0f per later solve (limit %.0f), %.1f per deduction%n",
+				cells, firstBytes / (double)firstSolves, perSolve, limit,
+				(firstBytes + laterBytes) / (double)(repetitions / 2) / deductions);
+		if (perSolve > limit) {
+			System.out.println("FAILED: steady-state solves allocate too much");
+			System.exit(1);
+		}
+	}
+}
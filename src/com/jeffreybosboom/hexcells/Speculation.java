@@ -0,0 +1,170 @@
+package com.jeffreybosboom.hexcells;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Table;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Deduces ahead while the board settles.  The next capture differs from the
+ * puzzle we just deduced only in the constraints revealed in the cells we
+ * marked absent, so for each such cell we deduce the puzzle plus each
+ * constraint it could reveal (every feasible count of present neighbors,
+ * plain then marked contiguous or discontiguous) and cache what each one
+ * implies.  When the next puzzle is parsed, the cached deductions for the
+ * constraints actually revealed can be clicked at once, and the deducer
+ * starts from them instead of from scratch.
+ * <p>
+ * Each cached deduction follows from the previous puzzle plus a single
+ * revealed constraint, so their union is implied by the next puzzle; the
+ * deducer then finds whatever the revealed constraints imply together.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/19/2026
+ */
+public final class Speculation {
+	private final Puzzle puzzle;
+	private final SolverContext solver;
+	private final Map<Coordinate, ImmutableList<Coordinate>> regions;
+	//revealed cell, constraint key -> the cells that constraint determines
+	private final Table<Coordinate, Integer, ImmutableMap<Coordinate, CellState>> cache = HashBasedTable.create();
+	//also checked by the deducer between rule passes, so finish() needn't
+	//wait for the candidate in flight
+	private final AtomicBoolean stopped = new AtomicBoolean();
+	private final Future<?> future;
+	private long nanos;
+
+	private Speculation(Puzzle puzzle, Collection<Coordinate> revealed, SolverContext solver, ExecutorService executor) {
+		this.puzzle = puzzle;
+		this.solver = solver;
+		//the region of a revealed constraint, as the parser will build it
+		this.regions = revealed.stream()
+				.collect(Collectors.toMap(c -> c, c -> ImmutableList.copyOf(c.neighbors()
+						.filter(n -> puzzle.at(n) != null)
+						.iterator()),
+						(a, b) -> a, LinkedHashMap::new));
+		this.future = executor.submit(this::run);
+	}
+
+	/**
+	 * Starts speculating on the given executor.
+	 * @param puzzle the puzzle as of the clicks just made, at a fixpoint
+	 * @param revealed the cells just marked absent, which may reveal
+	 * constraints
+	 * @param solver the context to deduce with, which must only be used on
+	 * the executor's thread
+	 * @param executor where to speculate, a single thread
+	 * @return the speculation, to be {@link #finish(Puzzle) finished} once
+	 * the next puzzle is parsed
+	 */
+	public static Speculation start(Puzzle puzzle, Collection<Coordinate> revealed, SolverContext solver, ExecutorService executor) {
+		return new Speculation(puzzle, revealed, solver, executor);
+	}
+
+	private void run() {
+		long start = System.nanoTime();
+		for (Map.Entry<Coordinate, ImmutableList<Coordinate>> e : regions.entrySet()) {
+			List<Coordinate> region = e.getValue();
+			int present = (int)region.stream().filter(puzzle::isPresent).count(),
+					unknown = (int)region.stream().filter(puzzle::isUnknown).count();
+			//if nothing around it is unknown, the constraint can't tell us anything
+			if (unknown == 0) continue;
+			for (int marks = 0; marks < 3; ++marks)
+				for (int target = present; target <= present + unknown; ++target) {
+					if (stopped.get()) {
+						nanos = System.nanoTime() - start;
+						return;
+					}
+					//only counts of two or more can be marked
+					if (marks > 0 && target < 2) continue;
+					Constraint c = new CellConstraint(e.getKey(), region, target, marks == 1, marks == 2);
+					Deducer.Result result = solver.deduceUntil(puzzle.constrain(c), ImmutableMap.of(), null,
+							OptionalLong.empty(), stopped);
+					//stopped partway, so this candidate's deductions are incomplete
+					if (!result.isComplete()) {
+						nanos = System.nanoTime() - start;
+						return;
+					}
+					Puzzle deduced = result.puzzle();
+					//if the constraint contradicts the puzzle, it won't be revealed,
+					//and what the rules made of it is junk
+					if (!feasible(deduced)) continue;
+					ImmutableMap.Builder<Coordinate, CellState> deductions = ImmutableMap.builder();
+					puzzle.cells().filter(x -> puzzle.isUnknown(x) && deduced.isKnown(x))
+							.forEachOrdered(x -> deductions.put(x, deduced.at(x)));
+					cache.put(e.getKey(), key(c), deductions.build());
+				}
+		}
+		nanos = System.nanoTime() - start;
+	}
+
+	/**
+	 * Returns true if every constraint in the given puzzle can still reach its
+	 * target.  The rules don't report contradictions; they just stop making
+	 * sound deductions.
+	 */
+	private static boolean feasible(Puzzle puzzle) {
+		return puzzle.constraints().allMatch(c -> {
+			int present = 0, unknown = 0;
+			for (Coordinate x : c.region())
+				if (puzzle.isPresent(x)) ++present;
+				else if (puzzle.isUnknown(x)) ++unknown;
+			return present <= c.target() && c.target() <= present + unknown;
+		});
+	}
+
+	private static int key(Constraint c) {
+		return c.target() << 2 | (c.isContiguous() ? 1 : 0) | (c.isDiscontiguous() ? 2 : 0);
+	}
+
+	/**
+	 * Stops speculating and returns the cached deductions for the constraints
+	 * revealed in the given puzzle, restricted to the cells it doesn't know.
+	 * The candidate being deduced is abandoned after its current rule pass.
+	 * If the cached deductions disagree (which means the puzzle was misparsed
+	 * at some point), returns nothing rather than guess which is right.
+	 * @param next the next puzzle
+	 * @return the deductions, which may be empty
+	 */
+	public Map<Coordinate, CellState> finish(Puzzle next) {
+		stopped.set(true);
+		try {
+			Uninterruptibles.getUninterruptibly(future);
+		} catch (ExecutionException ex) {
+			throw new RuntimeException(ex.getCause());
+		}
+		Map<Coordinate, CellState> deductions = new LinkedHashMap<>();
+		for (Constraint c : (Iterable<Constraint>)next.constraints()::iterator) {
+			if (!(c instanceof CellConstraint)) continue;
+			Coordinate center = ((CellConstraint)c).center();
+			if (!c.region().equals(regions.get(center))) continue;
+			ImmutableMap<Coordinate, CellState> cached = cache.get(center, key(c));
+			if (cached == null) continue;
+			for (Map.Entry<Coordinate, CellState> e : cached.entrySet()) {
+				if (!next.isUnknown(e.getKey())) continue;
+				CellState previous = deductions.putIfAbsent(e.getKey(), e.getValue());
+				if (previous != null && previous != e.getValue())
+					return ImmutableMap.of();
+			}
+		}
+		return deductions;
+	}
+
+	/**
+	 * Returns how long we speculated for.  Only valid after
+	 * {@link #finish(Puzzle)}.
+	 */
+	public long nanos() {
+		return nanos;
+	}
+}
@@ -0,0 +1,89 @@
+package com.jeffreybosboom.hexcells;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Per-stage latency histograms for the capture-parse-deduce-click loop, one
+ * sample per stage per round.  Several {@link Effector}s may share one
+ * instance to aggregate over sessions.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/19/2026
+ */
+public final class StageTimings {
+	public static enum Stage {
+		/** capturing the full window */
+		CAPTURE,
+		/** segmenting the capture into connected components */
+		SEGMENT,
+		/** fitting the hexagons to the grid and building the puzzle */
+		GRID,
+		/** recognizing in-cell and board-edge constraints */
+		RECOGNIZE,
+		/** deducing (on the deducer thread, overlapping CLICK) */
+		DEDUCE,
+		/**
+		 * deducing ahead for the next round (on the deducer thread,
+		 * overlapping SETTLE and the next round's parsing)
+		 */
+		SPECULATE,
+		/** clicking deductions, including verification */
+		CLICK,
+		/** waiting for the board to settle after clicking */
+		SETTLE;
+		@Override
+		public String toString() {
+			return name().toLowerCase();
+		}
+	}
+
+	private final Map<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+	public StageTimings() {
+		for (Stage s : Stage.values())
+			histograms.put(s, new LatencyHistogram());
+	}
+
+	public LatencyHistogram get(Stage stage) {
+		return histograms.get(stage);
+	}
+
+	public void record(Stage stage, long nanos) {
+		histograms.get(stage).record(nanos);
+	}
+
+	/**
+	 * Records the time since the given {@link System#nanoTime()} reading and
+	 * returns the current reading, so consecutive stages can be chained.
+	 * @param stage the stage
+	 * @param start when the stage began
+	 * @return when the stage ended
+	 */
+	public long recordSince(Stage stage, long start) {
+		long now = System.nanoTime();
+		record(stage, now - start);
+		return now;
+	}
+
+	/**
+	 * Returns a line per stage, with its sample count, p50, p99 and maximum.
+	 */
+	public String report() {
+		StringBuilder sb = new StringBuilder();
+		for (Stage s : Stage.values())
+			sb.append(String.format("%-9s %s%n", s, histograms.get(s)));
+		return sb.toString();
+	}
+
+	public void writeTo(Path file) throws IOException {
+		Files.write(file, report().getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public String toString() {
+		return report();
+	}
+}
@@ -0,0 +1,354 @@
+package com.jeffreybosboom.hexcells;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.jeffreybosboom.hexcells.Recognizer.Result;
+import com.jeffreybosboom.hexcells.Recognizer.Result.ConstraintKind;
+import com.jeffreybosboom.hexcells.Recognizer.Result.ConstraintPosition;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import javax.imageio.ImageIO;
+
+/**
+ * Measures the recognizer's accuracy and speed over a labeled corpus of glyph
+ * images, and times the vision hot spots ({@link Recognizer} matching and
+ * {@link Region#connectedComponents} and its variants) in isolation.
+ * Reports accuracy per kind of image, a confusion matrix over labels and
+ * glyphs per second.
+ * <p>
+ * A corpus is a directory of PNGs laid out as {@code kind/label/*.png}, where
+ * kind is one of
+ * <ul>
+ * <li>{@code cleaned}: an in-cell glyph already cleaned (dark on white), as in
+ * constraints/
+ * <li>{@code cell-present}, {@code cell-absent}: a hex of that state with its
+ * glyph, as captured
+ * <li>{@code edge-top}, {@code edge-left}, {@code edge-right}: a board-edge
+ * glyph of that orientation, as captured
+ * </ul>
+ * and label is the glyph's text ({@code 3}, <code>{3}</code>, {@code -3-}, or
+ * {@code question} for ?).  With no corpus, one is synthesized by rendering
+ * every glyph the way {@link SimulatedGame} does at font sizes 16 to 26;
+ * {@code -write dir} saves it in the corpus layout, as a starting point for
+ * adding real captures.
+ * <p>
+ * These are plain timing loops with warmup, not JMH benchmarks, so they run
+ * from the build's classpath with no extra dependencies.
+ * <p>
+ * Usage: {@code VisionBenchmark [-write dir] [corpus-dir]}
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/19/2026
+ */
+public final class VisionBenchmark {
+	private VisionBenchmark() {}
+
+	private static final int HEX_SIZE = 28, BORDER_WIDTH = 4, EDGE_IMAGE_SIZE = 64;
+	private static final String QUESTION_LABEL = "question", NONE = "none";
+	private static final long WARMUP_NANOS = TimeUnit.SECONDS.toNanos(1), MEASURE_NANOS = TimeUnit.SECONDS.toNanos(3);
+	//sink for benchmark results, so the JIT can't discard the work
+	private static volatile int blackhole;
+
+	private static enum Kind {
+		CLEANED("cleaned", null, null),
+		CELL_PRESENT("cell-present", CellState.PRESENT, null),
+		CELL_ABSENT("cell-absent", CellState.ABSENT, null),
+		EDGE_TOP("edge-top", null, ConstraintPosition.TOP),
+		EDGE_LEFT("edge-left", null, ConstraintPosition.LEFT),
+		EDGE_RIGHT("edge-right", null, ConstraintPosition.RIGHT);
+		private final String directory;
+		private final CellState cellState;
+		private final ConstraintPosition position;
+		private Kind(String directory, CellState cellState, ConstraintPosition position) {
+			this.directory = directory;
+			this.cellState = cellState;
+			this.position = position;
+		}
+		boolean isEdge() {
+			return position != null;
+		}
+	}
+
+	private static final class Sample {
+		final Kind kind;
+		final String label;
+		final BufferedImage image;
+		Sample(Kind kind, String label, BufferedImage image) {
+			this.kind = kind;
+			this.label = label;
+			this.image = image;
+		}
+	}
+
+	/**
+	 * Recognizes the given sample and returns its label, with the orientation
+	 * appended if a board-edge glyph was read in the wrong one.
+	 */
+	private static String recognize(Recognizer recognizer, Sample s) {
+		Optional<Result> result;
+		if (s.kind == Kind.CLEANED)
+			result = Optional.of(recognizer.recognizeCleanedCell(s.image));
+		else if (s.kind.isEdge())
+			result = recognizer.recognizeBoardEdge(s.image);
+		else
+			result = recognizer.recognizeCell(s.image, s.kind.cellState);
+		if (!result.isPresent()) return NONE;
+		String label = label(result.get());
+		if (s.kind.isEdge() && result.get().pos != s.kind.position)
+			label += "@" + result.get().pos.toString().toLowerCase();
+		return label;
+	}
+
+	private static String label(Result r) {
+		return r.number == Result.QUESTION_MARK ? QUESTION_LABEL : text(r.number, r.kind);
+	}
+
+	private static String text(int number, ConstraintKind kind) {
+		if (kind == ConstraintKind.CONNECTED)
+			return "{" + number + "}";
+		if (kind == ConstraintKind.DISCONNECTED)
+			return "-" + number + "-";
+		return Integer.toString(number);
+	}
+
+	//<editor-fold defaultstate="collapsed" desc="Corpus">
+	private static List<Sample> readCorpus(File directory) throws IOException {
+		List<Sample> samples = new ArrayList<>();
+		for (Kind kind : Kind.values()) {
+			File[] labels = new File(directory, kind.directory).listFiles(File::isDirectory);
+			if (labels == null) continue;
+			for (File label : labels) {
+				File[] files = label.listFiles((dir, name) -> name.endsWith(".png"));
+				Arrays.sort(files);
+				for (File f : files)
+					samples.add(new Sample(kind, label.getName(), ImageIO.read(f)));
+			}
+		}
+		return samples;
+	}
+
+	private static void writeCorpus(List<Sample> samples, File directory) throws IOException {
+		Map<String, Integer> counts = new TreeMap<>();
+		for (Sample s : samples) {
+			File dir = new File(new File(directory, s.kind.directory), s.label);
+			if (!dir.isDirectory() && !dir.mkdirs())
+				throw new IOException("couldn't create " + dir);
+			int n = counts.merge(dir.getPath(), 1, Integer::sum);
+			ImageIO.write(s.image, "png", new File(dir, String.format("%04d.png", n)));
+		}
+	}
+
+	private static List<Sample> synthesizeCorpus() {
+		List<Sample> samples = new ArrayList<>();
+		for (int fontSize = 16; fontSize <= 26; ++fontSize) {
+			samples.add(new Sample(Kind.CLEANED, QUESTION_LABEL, renderCleaned("?", fontSize)));
+			for (Kind kind : EnumSet.of(Kind.CELL_PRESENT, Kind.CELL_ABSENT))
+				samples.add(new Sample(kind, QUESTION_LABEL, renderCell("?", fontSize, kind.cellState)));
+			for (ConstraintKind k : ConstraintKind.values())
+				for (int n = (k == ConstraintKind.NORMAL ? 0 : 2); n < 10; ++n) {
+					String text = text(n, k);
+					for (Kind kind : EnumSet.of(Kind.EDGE_TOP, Kind.EDGE_LEFT, Kind.EDGE_RIGHT))
+						samples.add(new Sample(kind, text, renderEdge(text, fontSize, kind.position)));
+					if (n > 6) continue;
+					samples.add(new Sample(Kind.CLEANED, text, renderCleaned(text, fontSize)));
+					for (Kind kind : EnumSet.of(Kind.CELL_PRESENT, Kind.CELL_ABSENT))
+						samples.add(new Sample(kind, text, renderCell(text, fontSize, kind.cellState)));
+				}
+		}
+		return samples;
+	}
+
+	private static Graphics2D graphics(BufferedImage image, int fontSize) {
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, image.getWidth(), image.getHeight());
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g.setFont(Recognizer.HARABARA.deriveFont((float)fontSize));
+		return g;
+	}
+
+	private static BufferedImage renderCell(String text, int fontSize, CellState state) {
+		int size = 2 * HEX_SIZE + 1;
+		BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = graphics(image, fontSize);
+		Region.Point center = new Region.Point(HEX_SIZE, HEX_SIZE);
+		g.setColor(Colors.HEXAGON_BORDER_COLORS.inverse().get(state));
+		g.fillPolygon(SimulatedGame.hexagon(center, HEX_SIZE));
+		g.setColor(Colors.HEXAGON_INTERIOR_COLORS.inverse().get(state));
+		g.fillPolygon(SimulatedGame.hexagon(center, HEX_SIZE - BORDER_WIDTH));
+		SimulatedGame.drawCentered(g, text, center.x, center.y, Color.WHITE);
+		g.dispose();
+		return image;
+	}
+
+	private static BufferedImage renderEdge(String text, int fontSize, ConstraintPosition position) {
+		BufferedImage image = new BufferedImage(EDGE_IMAGE_SIZE, EDGE_IMAGE_SIZE, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = graphics(image, fontSize);
+		g.translate(EDGE_IMAGE_SIZE / 2, EDGE_IMAGE_SIZE / 2);
+		//the same rotations the recognizer renders its references with
+		if (position == ConstraintPosition.LEFT)
+			g.rotate(-Math.PI/3);
+		else if (position == ConstraintPosition.RIGHT)
+			g.rotate(Math.PI/3);
+		SimulatedGame.drawCentered(g, text, 0, 0, Color.BLACK);
+		g.dispose();
+		return image;
+	}
+
+	private static BufferedImage renderCleaned(String text, int fontSize) {
+		BufferedImage image = new BufferedImage(EDGE_IMAGE_SIZE, EDGE_IMAGE_SIZE, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = graphics(image, fontSize);
+		SimulatedGame.drawCentered(g, text, EDGE_IMAGE_SIZE / 2, EDGE_IMAGE_SIZE / 2, Color.BLACK);
+		g.dispose();
+		return image;
+	}
+	//</editor-fold>
+
+	private static void reportAccuracy(List<Sample> samples, List<String> predictions) {
+		System.out.println("accuracy:");
+		for (Kind kind : Kind.values()) {
+			int total = 0, correct = 0;
+			for (int i = 0; i < samples.size(); ++i)
+				if (samples.get(i).kind == kind) {
+					++total;
+					if (samples.get(i).label.equals(predictions.get(i)))
+						++correct;
+				}
+			if (total > 0)
+				System.out.format("  %-12s %5d/%-5d %6.2f%%%n", kind.directory, correct, total, 100.0 * correct / total);
+		}
+		long correct = 0;
+		for (int i = 0; i < samples.size(); ++i)
+			if (samples.get(i).label.equals(predictions.get(i)))
+				++correct;
+		System.out.format("  %-12s %5d/%-5d %6.2f%%%n", "all", correct, samples.size(), 100.0 * correct / samples.size());
+	}
+
+	/**
+	 * Prints the confusion matrix (rows are true labels, columns are
+	 * predictions), then the off-diagonal entries from most to least common.
+	 */
+	private static void reportConfusion(List<Sample> samples, List<String> predictions) {
+		Set<String> labels = new TreeSet<>();
+		Map<String, Map<String, Integer>> matrix = new TreeMap<>();
+		for (int i = 0; i < samples.size(); ++i) {
+			String actual = samples.get(i).label, predicted = predictions.get(i);
+			labels.add(actual);
+			labels.add(predicted);
+			matrix.computeIfAbsent(actual, k -> new TreeMap<>()).merge(predicted, 1, Integer::sum);
+		}
+		int width = Math.max(labels.stream().mapToInt(String::length).max().getAsInt(), 4) + 1;
+		String cell = "%" + width + "s";
+		System.out.println("confusion matrix (rows actual, columns predicted):");
+		StringBuilder header = new StringBuilder(String.format(cell, ""));
+		for (String predicted : labels)
+			header.append(String.format(cell, predicted));
+		System.out.println(header);
+		for (Map.Entry<String, Map<String, Integer>> row : matrix.entrySet()) {
+			StringBuilder line = new StringBuilder(String.format(cell, row.getKey()));
+			for (String predicted : labels) {
+				Integer count = row.getValue().get(predicted);
+				line.append(String.format(cell, count == null ? "." : count.toString()));
+			}
+			System.out.println(line);
+		}
+
+		List<Map.Entry<String, Integer>> confusions = matrix.entrySet().stream()
+				.flatMap(row -> row.getValue().entrySet().stream()
+						.filter(e -> !e.getKey().equals(row.getKey()))
+						.map(e -> Maps.immutableEntry(row.getKey() + " -> " + e.getKey(), e.getValue())))
+				.sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+				.collect(Collectors.toList());
+		if (!confusions.isEmpty())
+			System.out.println("confusions: " + confusions.stream()
+					.map(e -> e.getKey() + " (" + e.getValue() + ")")
+					.collect(Collectors.joining(", ")));
+	}
+
+	/**
+	 * Runs the given operation repeatedly for the warmup period, then for the
+	 * measurement period, and returns the mean nanoseconds per operation.
+	 */
+	private static double time(Supplier<?> op) {
+		long warmupEnd = System.nanoTime() + WARMUP_NANOS;
+		int sink = 0;
+		while (System.nanoTime() < warmupEnd)
+			sink += op.get().hashCode();
+		long ops = 0, start = System.nanoTime(), elapsed;
+		do {
+			sink += op.get().hashCode();
+			++ops;
+		} while ((elapsed = System.nanoTime() - start) < MEASURE_NANOS);
+		blackhole = sink;
+		return elapsed / (double)ops;
+	}
+
+	public static void main(String[] args) throws IOException {
+		File write = null, corpus = null;
+		for (int i = 0; i < args.length; ++i)
+			if (args[i].equals("-write"))
+				write = new File(args[++i]);
+			else
+				corpus = new File(args[i]);
+		List<Sample> samples = corpus != null ? readCorpus(corpus) : synthesizeCorpus();
+		if (samples.isEmpty()) {
+			System.err.println("no samples in " + corpus);
+			System.exit(1);
+		}
+		if (write != null)
+			writeCorpus(samples, write);
+		System.out.format("%d samples from %s%n", samples.size(), corpus != null ? corpus : "synthesized corpus");
+
+		Recognizer recognizer = new Recognizer();
+		List<String> predictions = samples.stream()
+				.map(s -> recognize(recognizer, s))
+				.collect(Collectors.toList());
+		reportAccuracy(samples, predictions);
+		reportConfusion(samples, predictions);
+
+		double corpusNanos = time(() -> {
+			int hash = 0;
+			for (Sample s : samples)
+				hash += recognize(recognizer, s).hashCode();
+			return hash;
+		});
+		System.out.format("recognize: %.0f glyphs/s (%.1f us/glyph)%n",
+				samples.size() / (corpusNanos / 1e9), corpusNanos / samples.size() / 1e3);
+
+		//microbenchmarks
+		BufferedImage cleaned = samples.stream().filter(s -> s.kind == Kind.CLEANED)
+				.map(s -> s.image).findFirst().orElseGet(() -> renderCleaned("{4}", 22));
+		System.out.format("compare (cleaned glyph): %.1f us/op%n",
+				time(() -> recognizer.recognizeCleanedCell(cleaned)) / 1e3);
+		BufferedImage frame = SimulatedGame.random(new Random(0), 5).capture();
+		Set<Integer> borderColors = Colors.HEXAGON_BORDER_COLORS.keySet().stream()
+				.map(Color::getRGB).collect(Collectors.toSet());
+		for (int step : new int[]{1, 4})
+			System.out.format("connectedComponents (%dx%d frame, step %d): %.2f ms/op%n",
+					frame.getWidth(), frame.getHeight(), step,
+					time(() -> {
+						ImmutableSet<Region> regions = Region.connectedComponents(frame, borderColors, step);
+						return regions.size();
+					}) / 1e6);
+		int strips = Runtime.getRuntime().availableProcessors();
+		System.out.format("connectedComponentsInStrips (%dx%d frame, %d strips): %.2f ms/op%n",
+				frame.getWidth(), frame.getHeight(), strips,
+				time(() -> Region.connectedComponentsInStrips(frame, borderColors, strips).size()) / 1e6);
+	}
+}
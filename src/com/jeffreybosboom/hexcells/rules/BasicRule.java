@@ -1,40 +1,39 @@
 package com.jeffreybosboom.hexcells.rules;
 
-import com.jeffreybosboom.hexcells.CellState;
-import com.jeffreybosboom.hexcells.Coordinate;
-import com.jeffreybosboom.hexcells.Puzzle;
-import java.util.LinkedHashSet;
-import java.util.Set;
-import java.util.function.Function;
+import com.jeffreybosboom.hexcells.BoardIndex;
+import com.jeffreybosboom.hexcells.BoardState;
 
 /**
  * If a constraint has met its target, all other hexes are absent; if a group
  * has unknown hexes equal to its target minus present hexes, all other hexes
  * are present.
+ * <p>
+ * Cell constraints are left to {@link CellConstraintTable}.
  * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
  * @since 9/13/2014
  */
-public final class BasicRule implements Function<Puzzle, Puzzle> {
+public final class BasicRule implements Rule {
 	@Override
-	public Puzzle apply(Puzzle t) {
-		Set<Coordinate> markAbsent = new LinkedHashSet<>(), markPresent = new LinkedHashSet<>();
-		t.constraints().forEachOrdered(c -> {
-			int present = (int)c.region().stream().filter(t::isPresent).count();
-			int absent = (int)c.region().stream().filter(t::isAbsent).count();
-			int known = present + absent;
-			int unknown = c.region().size() - known;
+	public int cost() {
+		return 1;
+	}
 
-			if (present == c.target())
-				c.region().stream().filter(t::isUnknown).forEachOrdered(markAbsent::add);
-			else if (present + unknown == c.target())
-				c.region().stream().filter(t::isUnknown).forEachOrdered(markPresent::add);
-		});
+	@Override
+	public boolean apply(BoardState state) {
+		BoardIndex index = state.index();
+		int marked = 0;
+		for (int c = state.nextActive(0); c >= 0; c = state.nextActive(c + 1)) {
+			if (index.ring(c) != null) continue;
+			long[] region = index.region(c);
+			int present = state.countPresent(region);
+			int unknown = state.countUnknown(region);
+			if (unknown == 0) continue;
 
-		Puzzle p = t;
-		for (Coordinate c : markAbsent)
-			p = p.refine(c, CellState.ABSENT);
-		for (Coordinate c : markPresent)
-			p = p.refine(c, CellState.PRESENT);
-		return p;
+			if (present == index.target(c))
+				marked += state.markAllAbsent(region);
+			else if (present + unknown == index.target(c))
+				marked += state.markAllPresent(region);
+		}
+		return marked > 0;
 	}
 }
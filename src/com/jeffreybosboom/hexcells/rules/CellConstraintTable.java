@@ -0,0 +1,125 @@
+package com.jeffreybosboom.hexcells.rules;
+
+import com.jeffreybosboom.hexcells.BoardIndex;
+import com.jeffreybosboom.hexcells.BoardState;
+import com.jeffreybosboom.hexcells.Constraint;
+
+/**
+ * Solves cell constraints exactly by table lookup.  A cell constraint covers
+ * at most the six hexes around its center, so for every target, kind (normal,
+ * {contiguous} or -discontiguous-) and state of the six hexes (not in the
+ * region, unknown, absent or present; 4^6 states) we precompute which unknown
+ * hexes are present or absent in every assignment satisfying the constraint.
+ * Contiguity is around the ring, wrapping from the upper-left hex to the top
+ * hex.
+ * <p>
+ * This subsumes both {@link BasicRule} and {@link SubsetChecking} for cell
+ * constraints, so they skip them.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/19/2026
+ */
+public final class CellConstraintTable implements Rule {
+	private static final int NORMAL = 0, CONTIGUOUS = 1, DISCONTIGUOUS = 2;
+	private static final int ALWAYS_ABSENT_SHIFT = 6, FEASIBLE = 1 << 12;
+	private static final int NOT_IN_REGION = 0, UNKNOWN = 1, ABSENT = 2, PRESENT = 3;
+	/**
+	 * Indexed by kind, target and state key; each entry has the always-present
+	 * ring positions in the low six bits, then the always-absent positions,
+	 * then {@link #FEASIBLE} if any assignment satisfies the constraint.
+	 */
+	private static final int[][][] TABLE = new int[3][7][1 << 12];
+	static {
+		for (int key = 0; key < (1 << 12); ++key) {
+			int unknown = 0, present = 0;
+			for (int i = 0; i < 6; ++i) {
+				int code = (key >>> (2 * i)) & 3;
+				if (code == UNKNOWN)
+					unknown |= 1 << i;
+				else if (code == PRESENT)
+					present |= 1 << i;
+			}
+			int[][] alwaysPresent = new int[3][7], alwaysAbsent = new int[3][7];
+			boolean[][] feasible = new boolean[3][7];
+			//enumerate subsets of the unknown positions
+			for (int subset = unknown; ; subset = (subset - 1) & unknown) {
+				int assignment = present | subset;
+				int target = Integer.bitCount(assignment);
+				int kind = isRingContiguous(assignment) ? CONTIGUOUS : DISCONTIGUOUS;
+				for (int k : new int[]{NORMAL, kind}) {
+					if (!feasible[k][target]) {
+						alwaysPresent[k][target] = unknown;
+						alwaysAbsent[k][target] = unknown;
+						feasible[k][target] = true;
+					}
+					alwaysPresent[k][target] &= subset;
+					alwaysAbsent[k][target] &= ~subset;
+				}
+				if (subset == 0) break;
+			}
+			for (int k = 0; k < 3; ++k)
+				for (int t = 0; t < 7; ++t)
+					if (feasible[k][t])
+						TABLE[k][t][key] = alwaysPresent[k][t] | (alwaysAbsent[k][t] << ALWAYS_ABSENT_SHIFT) | FEASIBLE;
+		}
+	}
+
+	private static boolean isRingContiguous(int positions) {
+		//contiguous iff at most one run starts (no runs if empty or full)
+		int previous = (positions >>> 5) | (positions << 1);
+		return Integer.bitCount(positions & ~previous & 0x3F) <= 1;
+	}
+
+	/**
+	 * Returns true iff some assignment of the unknown cells in the given ring
+	 * satisfies the given constraint, with cell states given as masks over
+	 * cell indices.
+	 */
+	static boolean isFeasible(Constraint cons, int[] ring, long[] present, long[] absent) {
+		int key = 0;
+		for (int i = 0; i < ring.length; ++i) {
+			int code = NOT_IN_REGION;
+			if (ring[i] >= 0) {
+				long bit = 1L << ring[i];
+				code = (present[ring[i] >>> 6] & bit) != 0 ? PRESENT :
+						(absent[ring[i] >>> 6] & bit) != 0 ? ABSENT : UNKNOWN;
+			}
+			key |= code << (2 * i);
+		}
+		int kind = cons.isContiguous() ? CONTIGUOUS : cons.isDiscontiguous() ? DISCONTIGUOUS : NORMAL;
+		return (TABLE[kind][cons.target()][key] & FEASIBLE) != 0;
+	}
+
+	@Override
+	public int cost() {
+		return 1;
+	}
+
+	@Override
+	public boolean apply(BoardState state) {
+		BoardIndex index = state.index();
+		int before = state.deductions();
+		for (int c = state.nextActive(0); c >= 0; c = state.nextActive(c + 1)) {
+			int[] ring = index.ring(c);
+			if (ring == null) continue;
+			int key = 0;
+			for (int i = 0; i < ring.length; ++i) {
+				int code = ring[i] < 0 ? NOT_IN_REGION :
+						state.isUnknown(ring[i]) ? UNKNOWN :
+						state.isAbsent(ring[i]) ? ABSENT : PRESENT;
+				key |= code << (2 * i);
+			}
+			Constraint cons = index.constraint(c);
+			int kind = cons.isContiguous() ? CONTIGUOUS : cons.isDiscontiguous() ? DISCONTIGUOUS : NORMAL;
+			int entry = TABLE[kind][cons.target()][key];
+			//infeasible means we misread something; leave it for the next round
+			if ((entry & FEASIBLE) == 0) continue;
+			for (int i = 0; i < ring.length; ++i) {
+				if ((entry & (1 << i)) != 0)
+					state.markPresent(ring[i]);
+				else if ((entry & (1 << (i + ALWAYS_ABSENT_SHIFT))) != 0)
+					state.markAbsent(ring[i]);
+			}
+		}
+		return state.deductions() > before;
+	}
+}
@@ -0,0 +1,264 @@
+package com.jeffreybosboom.hexcells.rules;
+
+import com.jeffreybosboom.hexcells.BoardIndex;
+import com.jeffreybosboom.hexcells.BoardState;
+import java.util.Arrays;
+
+/**
+ * Treats each constraint as a linear equation over its unknown cells (their
+ * sum is the target minus the present count) and combines equations.  When
+ * one equation's cells are a subset of another's, their difference is a new
+ * equation over the remaining cells, which can itself be combined, so chains
+ * of overlapping constraints are solved together.  For every pair of
+ * overlapping equations, subtracting one from the other gives cells with
+ * coefficient +1 and -1; if the difference is as large (small) as it can be,
+ * the +1 cells are all present (absent) and the -1 cells all absent
+ * (present).
+ * <p>
+ * Equations are bitmasks over cell indices.  Each thread keeps the last
+ * board's equations and updates the ones touching newly known cells rather
+ * than rebuilding them on every pass, and keeps its buffers between boards.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/19/2026
+ */
+public final class LinearRule implements Rule {
+	/**
+	 * Bounds the number of derived equations per pass, relative to the number
+	 * of constraint equations.
+	 */
+	private static final int DERIVED_PER_CONSTRAINT = 4;
+	private static final ThreadLocal<Workspace> WORKSPACE = ThreadLocal.withInitial(Workspace::new);
+
+	@Override
+	public int cost() {
+		return 4;
+	}
+
+	/**
+	 * A thread's constraint equations for the last board, as of the known
+	 * cells in {@link #known}, and its buffers for a pass's equations.  The
+	 * buffers are kept between passes and boards and only grow, so a pass
+	 * allocates nothing once they're big enough.
+	 */
+	private static final class Workspace {
+		BoardIndex index;
+		int words;
+		long[] known = new long[0], present = new long[0];
+		//indexed by constraint (words longs each); the unknown cells and how
+		//many of them are present
+		long[] constraintCells = new long[0];
+		int[] constraintSum = new int[0];
+		//this pass's equations (words longs each), with their sums and sizes
+		long[] cells = new long[0];
+		int[] sum = new int[0], size = new int[0];
+		int count;
+		//open-addressed set of equation indices plus one, for deduplication
+		int[] table = new int[0];
+		long[] forcePresent = new long[0], forceAbsent = new long[0], plus = new long[0], minus = new long[0];
+
+		/**
+		 * Brings the constraint equations up to date with the given state,
+		 * rebuilding them if it isn't a refinement of the last one.
+		 */
+		void load(BoardState state) {
+			if (!update(state))
+				rebuild(state);
+		}
+
+		private void rebuild(BoardState state) {
+			this.index = state.index();
+			this.words = index.words();
+			if (known.length != words) {
+				known = new long[words];
+				present = new long[words];
+				forcePresent = new long[words];
+				forceAbsent = new long[words];
+				plus = new long[words];
+				minus = new long[words];
+			}
+			for (int w = 0; w < words; ++w) {
+				present[w] = state.presentWord(w);
+				known[w] = present[w] | state.absentWord(w);
+			}
+			int constraints = index.constraintCount();
+			if (constraintCells.length < constraints * words)
+				constraintCells = new long[constraints * words];
+			if (constraintSum.length < constraints)
+				constraintSum = new int[constraints];
+			for (int c = 0; c < constraints; ++c) {
+				long[] region = index.region(c);
+				int p = 0;
+				for (int w = 0; w < words; ++w) {
+					constraintCells[c * words + w] = region[w] & ~known[w];
+					p += Long.bitCount(region[w] & present[w]);
+				}
+				constraintSum[c] = index.target(c) - p;
+			}
+		}
+
+		/**
+		 * Brings the equations up to date with the given state, or returns
+		 * false if the state isn't a refinement of the one we were built for.
+		 */
+		private boolean update(BoardState state) {
+			if (state.index() != index) return false;
+			for (int w = 0; w < words; ++w) {
+				long p = state.presentWord(w), a = state.absentWord(w);
+				if ((present[w] & ~p) != 0 || ((known[w] & ~present[w]) & ~a) != 0)
+					return false;
+			}
+			for (int w = 0; w < words; ++w) {
+				long p = state.presentWord(w);
+				long newlyKnown = (p | state.absentWord(w)) & ~known[w];
+				for (long bits = newlyKnown; bits != 0; bits &= bits - 1) {
+					int cell = (w << 6) + Long.numberOfTrailingZeros(bits);
+					long bit = 1L << cell;
+					for (int c : index.constraintsOf(cell)) {
+						constraintCells[c * words + w] &= ~bit;
+						if ((p & bit) != 0)
+							--constraintSum[c];
+					}
+				}
+				known[w] |= newlyKnown;
+				present[w] |= p & newlyKnown;
+			}
+			return true;
+		}
+
+		/**
+		 * Empties the pass's equations, making room for the given number.
+		 */
+		void clear(int capacity) {
+			if (sum.length < capacity) {
+				sum = new int[capacity];
+				size = new int[capacity];
+				//at most half full
+				table = new int[Integer.highestOneBit(capacity) * 4];
+			} else
+				Arrays.fill(table, 0);
+			if (cells.length < capacity * words)
+				cells = new long[capacity * words];
+			count = 0;
+		}
+
+		/**
+		 * Adds the equation staged in the slot after the last equation (with
+		 * the given sum) unless it's a duplicate.
+		 * @return true iff the equation was added
+		 */
+		boolean commit(int equationSum) {
+			int offset = count * words, equationSize = 0, hash = equationSum;
+			for (int w = 0; w < words; ++w) {
+				equationSize += Long.bitCount(cells[offset + w]);
+				hash = 31 * hash + Long.hashCode(cells[offset + w]);
+			}
+			int mask = table.length - 1;
+			for (int slot = (hash ^ (hash >>> 16)) & mask; ; slot = (slot + 1) & mask) {
+				int other = table[slot] - 1;
+				if (other < 0) {
+					table[slot] = count + 1;
+					break;
+				}
+				if (sum[other] == equationSum && sameCells(other, count))
+					return false;
+			}
+			sum[count] = equationSum;
+			size[count] = equationSize;
+			++count;
+			return true;
+		}
+
+		private boolean sameCells(int a, int b) {
+			for (int w = 0; w < words; ++w)
+				if (cells[a * words + w] != cells[b * words + w])
+					return false;
+			return true;
+		}
+
+		boolean intersects(int a, int b) {
+			for (int w = 0; w < words; ++w)
+				if ((cells[a * words + w] & cells[b * words + w]) != 0)
+					return true;
+			return false;
+		}
+
+		void or(long[] into, int equation) {
+			for (int w = 0; w < words; ++w)
+				into[w] |= cells[equation * words + w];
+		}
+	}
+
+	@Override
+	public boolean apply(BoardState state) {
+		Workspace ws = WORKSPACE.get();
+		ws.load(state);
+		int words = ws.words;
+
+		int constraints = 0;
+		for (int c = state.nextActive(0); c >= 0; c = state.nextActive(c + 1))
+			++constraints;
+		ws.clear(constraints * (DERIVED_PER_CONSTRAINT + 1));
+		long[] cells = ws.cells;
+		for (int c = state.nextActive(0); c >= 0; c = state.nextActive(c + 1)) {
+			System.arraycopy(ws.constraintCells, c * words, cells, ws.count * words, words);
+			boolean empty = true;
+			for (int w = 0; w < words; ++w)
+				empty &= cells[ws.count * words + w] == 0;
+			if (!empty)
+				ws.commit(ws.constraintSum[c]);
+		}
+		int maxEquations = ws.count * (DERIVED_PER_CONSTRAINT + 1);
+
+		long[] forcePresent = ws.forcePresent, forceAbsent = ws.forceAbsent;
+		long[] plus = ws.plus, minus = ws.minus;
+		Arrays.fill(forcePresent, 0);
+		Arrays.fill(forceAbsent, 0);
+		for (int i = 0; i < ws.count; ++i) {
+			if (ws.sum[i] == 0)
+				ws.or(forceAbsent, i);
+			else if (ws.sum[i] == ws.size[i])
+				ws.or(forcePresent, i);
+			for (int j = 0; j < i; ++j) {
+				if (!ws.intersects(i, j)) continue;
+				//a - b, then b - a
+				for (int k = 0; k < 2; ++k) {
+					int x = k == 0 ? i : j, y = k == 0 ? j : i;
+					int plusSize = 0, minusSize = 0;
+					for (int w = 0; w < words; ++w) {
+						plus[w] = cells[x * words + w] & ~cells[y * words + w];
+						minus[w] = cells[y * words + w] & ~cells[x * words + w];
+						plusSize += Long.bitCount(plus[w]);
+						minusSize += Long.bitCount(minus[w]);
+					}
+					int difference = ws.sum[x] - ws.sum[y];
+					if (difference == plusSize) {
+						or(forcePresent, plus);
+						or(forceAbsent, minus);
+					} else if (difference == -minusSize) {
+						or(forceAbsent, plus);
+						or(forcePresent, minus);
+					} else if (minusSize == 0 && plusSize > 0 && ws.count < maxEquations) {
+						//y is a subset of x, so x - y is an equation too
+						System.arraycopy(plus, 0, cells, ws.count * words, words);
+						ws.commit(difference);
+					}
+				}
+			}
+		}
+
+		//Equations are consistent for any puzzle we read correctly, but if we
+		//misread something, don't mark a cell both ways.
+		for (int w = 0; w < words; ++w) {
+			long conflict = forcePresent[w] & forceAbsent[w];
+			forcePresent[w] &= ~conflict;
+			forceAbsent[w] &= ~conflict;
+		}
+		int marked = state.markAllPresent(forcePresent) + state.markAllAbsent(forceAbsent);
+		return marked > 0;
+	}
+
+	private static void or(long[] into, long[] from) {
+		for (int w = 0; w < into.length; ++w)
+			into[w] |= from[w];
+	}
+}
@@ -0,0 +1,34 @@
+package com.jeffreybosboom.hexcells.rules;
+
+import com.jeffreybosboom.hexcells.BoardState;
+import com.jeffreybosboom.hexcells.Puzzle;
+import java.util.function.Function;
+
+/**
+ * A deduction rule.  Rules mark cells they can prove present or absent and
+ * must be sound, but need not be complete; the deducer runs them to a joint
+ * fixpoint.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/19/2026
+ */
+public interface Rule extends Function<Puzzle, Puzzle> {
+	/**
+	 * Returns this rule's relative cost, used to run cheap rules before
+	 * expensive ones.  Rules linear in the board size should return 1; others
+	 * should return roughly how many times slower they are per pass.
+	 */
+	public int cost();
+
+	/**
+	 * Applies this rule to the given state in place.
+	 * @return true iff any cells were marked
+	 */
+	public boolean apply(BoardState state);
+
+	@Override
+	public default Puzzle apply(Puzzle t) {
+		BoardState state = BoardState.of(t);
+		apply(state);
+		return state.toPuzzle(t);
+	}
+}
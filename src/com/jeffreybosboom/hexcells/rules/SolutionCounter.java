@@ -0,0 +1,493 @@
+package com.jeffreybosboom.hexcells.rules;
+
+import com.jeffreybosboom.hexcells.BoardIndex;
+import com.jeffreybosboom.hexcells.BoardState;
+import com.jeffreybosboom.hexcells.CellState;
+import com.jeffreybosboom.hexcells.Constraint;
+import com.jeffreybosboom.hexcells.Coordinate;
+import com.jeffreybosboom.hexcells.Pair;
+import com.jeffreybosboom.hexcells.Puzzle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+/**
+ * Counts the solutions of a puzzle (assignments of its unknown cells that
+ * satisfy every constraint) and, for each cell, in how many of them it's
+ * present.  Unlike the rules, this is exact, so it tells us whether a stalled
+ * puzzle has a unique solution and which cell is safest to guess.
+ * <p>
+ * The count is a search over cell assignments, but the unknown cells split
+ * into components that share no constraint, whose counts multiply.  We split
+ * again after every assignment, and cache each component's count by its cells
+ * and the states of the known cells its constraints can see, so a component
+ * reached by different assignments elsewhere on the board is only counted
+ * once.
+ * <p>
+ * Counting is exponential in the worst case (long line hints and few cell
+ * hints defeat the splitting), so callers that can't wait should count with
+ * a deadline ({@link #countUntil(Puzzle, long)}), which we check before each
+ * component we search.
+ * <p>
+ * Contiguity of cell constraints not within their center's neighbors isn't
+ * checked (the game doesn't make those).  Counts are doubles, so they're
+ * approximate beyond 2^53 solutions.
+ * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
+ * @since 10/19/2026
+ */
+public final class SolutionCounter {
+	private final BoardIndex index;
+	private final int words;
+	//the assignment being searched
+	private final long[] present, absent;
+	//each constraint's scope (see BoardIndex.scope)
+	private final long[][] scopes;
+	//the active constraints whose scope includes each cell
+	private final int[][] constraintsOfCell;
+	/**
+	 * Bounds the cache's memory use; when it fills we start over, which costs
+	 * time but not correctness.
+	 */
+	private static final int MAX_CACHE_ENTRIES = 1 << 18;
+	private final Map<Key, Component> cache = new HashMap<>();
+	//the System.nanoTime() reading after which to give up, if any
+	private final OptionalLong deadline;
+	private SolutionCounter(BoardState state, OptionalLong deadline) {
+		this.index = state.index();
+		this.deadline = deadline;
+		this.words = index.words();
+		this.present = new long[words];
+		this.absent = new long[words];
+		for (int i = 0; i < index.cellCount(); ++i)
+			if (state.isPresent(i))
+				present[i >>> 6] |= 1L << i;
+			else if (state.isAbsent(i))
+				absent[i >>> 6] |= 1L << i;
+
+		this.scopes = new long[index.constraintCount()][];
+		for (int c = 0; c < index.constraintCount(); ++c)
+			scopes[c] = index.scope(c);
+		this.constraintsOfCell = new int[index.cellCount()][];
+		for (int i = 0; i < index.cellCount(); ++i)
+			constraintsOfCell[i] = Arrays.stream(index.scopesOf(i)).filter(state::isActive).toArray();
+	}
+
+	/**
+	 * Counts the solutions of the given puzzle.
+	 */
+	public static Result count(Puzzle puzzle) {
+		return count(puzzle, OptionalLong.empty()).get();
+	}
+
+	/**
+	 * Counts the solutions of the given puzzle, giving up if the given
+	 * deadline passes first.  The deadline is checked before searching each
+	 * component, so this may overrun it by the time to split one.
+	 * @param puzzle the puzzle
+	 * @param deadline the {@link System#nanoTime()} reading after which to
+	 * give up
+	 * @return the count, or empty if we gave up
+	 */
+	public static Optional<Result> countUntil(Puzzle puzzle, long deadline) {
+		return count(puzzle, OptionalLong.of(deadline));
+	}
+
+	private static Optional<Result> count(Puzzle puzzle, OptionalLong deadline) {
+		BoardState state = BoardState.of(puzzle);
+		SolutionCounter counter = new SolutionCounter(state, deadline);
+		BoardIndex index = state.index();
+		double[] presentFraction = new double[index.cellCount()];
+		for (int i = 0; i < index.cellCount(); ++i)
+			presentFraction[i] = state.isPresent(i) ? 1 : 0;
+		for (int c = 0; c < index.constraintCount(); ++c)
+			if (!counter.isFeasible(c))
+				return Optional.of(new Result(index, 0, presentFraction));
+
+		long[] unknown = new long[counter.words];
+		for (int i = 0; i < index.cellCount(); ++i)
+			if (state.isUnknown(i))
+				unknown[i >>> 6] |= 1L << i;
+		double solutions = 1;
+		for (long[] part : counter.split(unknown)) {
+			Component component = counter.solve(part);
+			if (component == null) return Optional.empty();
+			solutions *= component.count;
+			int[] members = bits(part);
+			for (int j = 0; j < members.length; ++j)
+				presentFraction[members[j]] = component.count == 0 ? 0 : component.presentCounts[j] / component.count;
+		}
+		return Optional.of(new Result(index, solutions, presentFraction));
+	}
+
+	public static final class Result {
+		private final BoardIndex index;
+		private final double solutions;
+		private final double[] presentFraction;
+		private Result(BoardIndex index, double solutions, double[] presentFraction) {
+			this.index = index;
+			this.solutions = solutions;
+			this.presentFraction = presentFraction;
+		}
+
+		/**
+		 * Returns the number of solutions, which is 0 if the puzzle is
+		 * inconsistent (we misread something).
+		 */
+		public double solutions() {
+			return solutions;
+		}
+
+		public boolean isUnique() {
+			return solutions == 1;
+		}
+
+		/**
+		 * Returns the fraction of solutions in which the given cell is
+		 * present; 1 or 0 for known cells.
+		 */
+		public double presentFraction(Coordinate cell) {
+			return presentFraction[index.indexOf(cell)];
+		}
+
+		/**
+		 * Returns the unknown cell most likely to be in the given state with
+		 * the state it's most likely to be, or empty if there are no unknown
+		 * cells or no solutions.  A cell with fraction 0 or 1 is certain.
+		 */
+		public Optional<Pair<Coordinate, CellState>> safestGuess(Puzzle puzzle) {
+			if (solutions == 0) return Optional.empty();
+			Pair<Coordinate, CellState> best = null;
+			double bestCertainty = -1;
+			for (int i = 0; i < presentFraction.length; ++i) {
+				Coordinate c = index.cell(i);
+				if (!puzzle.isUnknown(c)) continue;
+				double certainty = Math.max(presentFraction[i], 1 - presentFraction[i]);
+				if (certainty > bestCertainty) {
+					bestCertainty = certainty;
+					best = new Pair<>(c, presentFraction[i] >= 0.5 ? CellState.PRESENT : CellState.ABSENT);
+				}
+			}
+			return Optional.ofNullable(best);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%.6g solutions", solutions);
+		}
+	}
+
+	/**
+	 * A component's solution count and, for each of its cells in index order,
+	 * the number of its solutions in which that cell is present.
+	 */
+	private static final class Component {
+		final double count;
+		final double[] presentCounts;
+		Component(double count, double[] presentCounts) {
+			this.count = count;
+			this.presentCounts = presentCounts;
+		}
+	}
+
+	/**
+	 * Counts the solutions of the given component, or returns null if the
+	 * deadline passed.  Giving up leaves the assignment half-undone, so the
+	 * counter can't be used afterward.
+	 */
+	private Component solve(long[] cells) {
+		Key key = key(cells);
+		Component cached = cache.get(key);
+		if (cached != null) return cached;
+		if (deadline.isPresent() && System.nanoTime() - deadline.getAsLong() >= 0)
+			return null;
+
+		int[] members = bits(cells);
+		Component closedForm = closedForm(members);
+		if (closedForm != null) return closedForm;
+		int branch = chooseBranch(members);
+		double count = 0;
+		double[] presentCounts = new double[members.length];
+		int[] trail = new int[members.length];
+		for (long[] assign : new long[][]{present, absent}) {
+			assign[branch >>> 6] |= 1L << branch;
+			trail[0] = branch;
+			int assigned = propagate(trail, 1);
+			if (assigned > 0) {
+				long[] rest = cells.clone();
+				for (int i = 0; i < assigned; ++i)
+					rest[trail[i] >>> 6] &= ~(1L << trail[i]);
+				List<long[]> parts = split(rest);
+				Component[] solved = new Component[parts.size()];
+				double product = 1;
+				for (int i = 0; i < solved.length && product != 0; ++i) {
+					solved[i] = solve(parts.get(i));
+					if (solved[i] == null) return null;
+					product *= solved[i].count;
+				}
+				if (product != 0) {
+					count += product;
+					for (int i = 0; i < assigned; ++i)
+						if ((present[trail[i] >>> 6] & (1L << trail[i])) != 0)
+							presentCounts[Arrays.binarySearch(members, trail[i])] += product;
+					for (int i = 0; i < solved.length; ++i) {
+						double others = product / solved[i].count;
+						int[] partMembers = bits(parts.get(i));
+						for (int j = 0; j < partMembers.length; ++j)
+							presentCounts[Arrays.binarySearch(members, partMembers[j])] += solved[i].presentCounts[j] * others;
+					}
+				}
+			} else
+				assigned = -assigned;
+			for (int i = 0; i < assigned; ++i) {
+				present[trail[i] >>> 6] &= ~(1L << trail[i]);
+				absent[trail[i] >>> 6] &= ~(1L << trail[i]);
+			}
+		}
+
+		Component result = new Component(count, presentCounts);
+		if (cache.size() >= MAX_CACHE_ENTRIES)
+			cache.clear();
+		cache.put(key, result);
+		return result;
+	}
+
+	/**
+	 * If the given cells are only in one constraint, and it only counts them,
+	 * returns the component's solutions without searching: choose the needed
+	 * number of cells, each present in the same fraction of solutions.  (This
+	 * is the common case for the tail of long axis constraints.)  Otherwise,
+	 * returns null.
+	 */
+	private Component closedForm(int[] members) {
+		int only = -1;
+		for (int m : members) {
+			if (constraintsOfCell[m].length > 1) return null;
+			if (constraintsOfCell[m].length == 0) continue;
+			int c = constraintsOfCell[m][0];
+			if (only != -1 && only != c) return null;
+			only = c;
+		}
+		double count;
+		double[] presentCounts = new double[members.length];
+		if (only == -1) {
+			//unconstrained cells; split puts each in its own component
+			count = Math.pow(2, members.length);
+			Arrays.fill(presentCounts, count / 2);
+		} else {
+			Constraint cons = index.constraint(only);
+			if (cons.isContiguous() || cons.isDiscontiguous()) return null;
+			long[] region = index.region(only);
+			int p = 0;
+			for (int w = 0; w < words; ++w)
+				p += Long.bitCount(region[w] & present[w]);
+			int needed = cons.target() - p;
+			count = binomial(members.length, needed);
+			Arrays.fill(presentCounts, binomial(members.length - 1, needed - 1));
+		}
+		return new Component(count, presentCounts);
+	}
+
+	private static double binomial(int n, int k) {
+		if (k < 0 || k > n) return 0;
+		double result = 1;
+		for (int i = 1; i <= Math.min(k, n - k); ++i)
+			result = result * (n - Math.min(k, n - k) + i) / i;
+		return result;
+	}
+
+	/**
+	 * Chooses the cell in the most constraints that still connect it to other
+	 * unknown cells, as assigning it is most likely to split the component.
+	 * Cells in only one constraint are left for {@link #closedForm(int[])}.
+	 */
+	private int chooseBranch(int[] members) {
+		int best = members[0], bestDegree = -1;
+		for (int m : members) {
+			if (constraintsOfCell[m].length < 2) continue;
+			int degree = 0;
+			for (int c : constraintsOfCell[m]) {
+				int u = 0;
+				for (int w = 0; w < words; ++w)
+					u += Long.bitCount(scopes[c][w] & ~(present[w] | absent[w]));
+				if (u > 1) ++degree;
+			}
+			if (degree > bestDegree) {
+				bestDegree = degree;
+				best = m;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Checks the constraints of the newly-assigned cells on the trail, and
+	 * assigns (and pushes) cells forced by constraints that have reached or
+	 * can only just reach their targets.
+	 * @return the number of cells on the trail, negated if a constraint can't
+	 * be satisfied
+	 */
+	private int propagate(int[] trail, int assigned) {
+		for (int next = 0; next < assigned; ++next)
+			for (int c : constraintsOfCell[trail[next]]) {
+				if (!isFeasible(c)) return -assigned;
+				long[] region = index.region(c);
+				int p = 0, u = 0;
+				for (int w = 0; w < words; ++w) {
+					p += Long.bitCount(region[w] & present[w]);
+					u += Long.bitCount(region[w] & ~(present[w] | absent[w]));
+				}
+				if (u == 0 || (p != index.target(c) && p + u != index.target(c))) continue;
+				long[] assign = p == index.target(c) ? absent : present;
+				for (int w = 0; w < words; ++w)
+					for (long bits = region[w] & ~(present[w] | absent[w]); bits != 0; bits &= bits - 1) {
+						int cell = (w << 6) + Long.numberOfTrailingZeros(bits);
+						assign[w] |= 1L << cell;
+						trail[assigned++] = cell;
+					}
+			}
+		return assigned;
+	}
+
+	/**
+	 * Returns false if the given constraint can't be satisfied by any
+	 * assignment of its unknown cells; true if it might be.
+	 */
+	private boolean isFeasible(int c) {
+		Constraint cons = index.constraint(c);
+		long[] region = index.region(c);
+		int p = 0, u = 0;
+		for (int w = 0; w < words; ++w) {
+			p += Long.bitCount(region[w] & present[w]);
+			u += Long.bitCount(region[w] & ~(present[w] | absent[w]));
+		}
+		if (p > cons.target() || p + u < cons.target()) return false;
+		if (!(cons.isContiguous() || cons.isDiscontiguous())) return true;
+
+		int[] ring = index.ring(c);
+		if (ring != null)
+			return CellConstraintTable.isFeasible(cons, ring, present, absent);
+		int[] line = index.line(c);
+		if (line != null) {
+			//as in SubsetChecking, present cells anywhere on the line count
+			int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+			boolean anyUnknown = false;
+			for (int i = 0; i < line.length; ++i) {
+				long bit = 1L << line[i];
+				if ((present[line[i] >>> 6] & bit) != 0) {
+					min = Math.min(min, i);
+					max = Math.max(max, i);
+				} else if ((absent[line[i] >>> 6] & bit) == 0)
+					anyUnknown = true;
+			}
+			boolean contiguous = min > max || max - min + 1 == cons.target();
+			if (!anyUnknown)
+				return contiguous == cons.isContiguous();
+			//a contiguous group can't already be spread wider than the target
+			return !(cons.isContiguous() && min <= max && max - min + 1 > cons.target());
+		}
+		return true;
+	}
+
+	/**
+	 * Splits the given unknown cells into components connected through the
+	 * scopes of active constraints.
+	 */
+	private List<long[]> split(long[] cells) {
+		long[] remaining = cells.clone();
+		int[] stack = new int[index.cellCount()];
+		List<long[]> parts = new ArrayList<>();
+		for (int w = 0; w < words; ++w)
+			while (remaining[w] != 0) {
+				int seed = (w << 6) + Long.numberOfTrailingZeros(remaining[w]);
+				long[] part = new long[words];
+				part[w] |= 1L << seed;
+				remaining[w] &= ~(1L << seed);
+				int top = 0;
+				stack[top++] = seed;
+				while (top > 0) {
+					int cell = stack[--top];
+					for (int c : constraintsOfCell[cell])
+						for (int v = 0; v < words; ++v) {
+							long added = scopes[c][v] & remaining[v];
+							if (added == 0) continue;
+							remaining[v] &= ~added;
+							part[v] |= added;
+							for (; added != 0; added &= added - 1)
+								stack[top++] = (v << 6) + Long.numberOfTrailingZeros(added);
+						}
+				}
+				parts.add(part);
+			}
+		return parts;
+	}
+
+	/**
+	 * A component's cache key: its cells and, for each constraint whose
+	 * scope includes them, how many more present cells it needs or (if it's
+	 * contiguity-marked) which of its known cells are present.  All the other
+	 * cells in those scopes are known, as unknown ones would be in the
+	 * component, so this determines the component's solutions.
+	 */
+	private Key key(long[] cells) {
+		long[] touching = new long[BoardIndex.wordsFor(index.constraintCount())];
+		int length = words;
+		for (int m : bits(cells))
+			for (int c : constraintsOfCell[m])
+				if ((touching[c >>> 6] & (1L << c)) == 0) {
+					touching[c >>> 6] |= 1L << c;
+					Constraint cons = index.constraint(c);
+					length += cons.isContiguous() || cons.isDiscontiguous() ? words : 1;
+				}
+		long[] bits = Arrays.copyOf(cells, length);
+		int next = words;
+		for (int tw = 0; tw < touching.length; ++tw)
+			for (long t = touching[tw]; t != 0; t &= t - 1) {
+				int c = (tw << 6) + Long.numberOfTrailingZeros(t);
+				Constraint cons = index.constraint(c);
+				if (cons.isContiguous() || cons.isDiscontiguous())
+					for (int w = 0; w < words; ++w)
+						bits[next++] = scopes[c][w] & present[w];
+				else {
+					long[] region = index.region(c);
+					int p = 0;
+					for (int w = 0; w < words; ++w)
+						p += Long.bitCount(region[w] & present[w]);
+					bits[next++] = cons.target() - p;
+				}
+			}
+		return new Key(bits);
+	}
+
+	private static final class Key {
+		private final long[] bits;
+		private final int hashCode;
+		Key(long[] bits) {
+			this.bits = bits;
+			this.hashCode = Arrays.hashCode(bits);
+		}
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Key && Arrays.equals(bits, ((Key)obj).bits);
+		}
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+
+	private static int[] bits(long[] mask) {
+		int count = 0;
+		for (long w : mask)
+			count += Long.bitCount(w);
+		int[] bits = new int[count];
+		int i = 0;
+		for (int w = 0; w < mask.length; ++w)
+			for (long b = mask[w]; b != 0; b &= b - 1)
+				bits[i++] = (w << 6) + Long.numberOfTrailingZeros(b);
+		return bits;
+	}
+}
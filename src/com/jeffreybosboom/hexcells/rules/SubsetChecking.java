@@ -1,84 +1,96 @@
 package com.jeffreybosboom.hexcells.rules;
 
-import com.google.common.collect.Sets;
-import com.jeffreybosboom.hexcells.AxisConstraint;
+import com.jeffreybosboom.hexcells.BoardIndex;
+import com.jeffreybosboom.hexcells.BoardState;
 import com.jeffreybosboom.hexcells.CellConstraint;
-import com.jeffreybosboom.hexcells.CellState;
 import com.jeffreybosboom.hexcells.Constraint;
-import com.jeffreybosboom.hexcells.Coordinate;
-import com.jeffreybosboom.hexcells.Puzzle;
-import java.util.ArrayDeque;
-import java.util.Comparator;
-import java.util.Deque;
-import java.util.HashSet;
-import java.util.IntSummaryStatistics;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Set;
-import java.util.function.Function;
-import java.util.function.ToIntFunction;
-import java.util.stream.Collectors;
 
 /**
  * Check all N-subsets of a region needing N hexes to reach its target.  If any
  * hexes are always present or absent, mark them present or absent.
+ * <p>
+ * Cell constraints are left to {@link CellConstraintTable}.
  * @author Jeffrey Bosboom <jbosboom@csail.mit.edu>
  * @since 9/13/2014
  */
-public final class SubsetChecking implements Function<Puzzle, Puzzle> {
+public final class SubsetChecking implements Rule {
+	/**
+	 * Each thread's buffers for a line's unknown cells and their positions,
+	 * grown to the longest line seen.
+	 */
+	private static final ThreadLocal<int[][]> BUFFERS = ThreadLocal.withInitial(() -> new int[2][0]);
 	@Override
-	public Puzzle apply(Puzzle t) {
-		for (Iterator<Constraint> iter = t.constraints().iterator(); iter.hasNext();) {
-			Constraint cons = iter.next();
+	public int cost() {
+		//exponential in the region size, but regions are short
+		return 20;
+	}
+
+	@Override
+	public boolean apply(BoardState state) {
+		BoardIndex index = state.index();
+		int before = state.deductions();
+		int[][] buffers = BUFFERS.get();
+		for (int c = state.nextActive(0); c >= 0; c = state.nextActive(c + 1)) {
+			Constraint cons = index.constraint(c);
 			if (!(cons.isContiguous() || cons.isDiscontiguous())) continue;
-			Set<Coordinate> present = cons.region().stream().filter(t::isPresent).collect(Collectors.toSet());
-			Set<Coordinate> unknown = cons.region().stream().filter(t::isUnknown).collect(Collectors.toSet());
-			int deficit = cons.target() - present.size();
+			if (cons instanceof CellConstraint) continue;
+			int[] line = index.line(c);
+			if (line == null)
+				throw new UnsupportedOperationException(cons.getClass().getSimpleName()+" "+cons);
 
-			Set<Coordinate> alwaysPresent = new HashSet<>(unknown), alwaysAbsent = new HashSet<>(unknown);
-			for (Set<Coordinate> s : Sets.powerSet(unknown)) {
-				if (s.size() != deficit) continue;
-				if (isContiguous(t, cons, Sets.union(present, s)) != cons.isContiguous()) continue;
-				alwaysAbsent.removeAll(s);
-				alwaysPresent.removeAll(Sets.difference(unknown, s));
+			//unknown region cells in axis order, with their positions on the
+			//axis; present cells anywhere on the axis count for contiguity
+			long[] region = index.region(c);
+			if (buffers[0].length < line.length) {
+				buffers[0] = new int[line.length];
+				buffers[1] = new int[line.length];
+			}
+			int[] unknown = buffers[0], position = buffers[1];
+			int unknowns = 0, present = 0, presentMin = Integer.MAX_VALUE, presentMax = Integer.MIN_VALUE;
+			for (int i = 0; i < line.length; ++i) {
+				int cell = line[i];
+				boolean inRegion = (region[cell >>> 6] & (1L << cell)) != 0;
+				if (state.isPresent(cell)) {
+					presentMin = Math.min(presentMin, i);
+					presentMax = Math.max(presentMax, i);
+					if (inRegion) ++present;
+				} else if (inRegion && state.isUnknown(cell)) {
+					unknown[unknowns] = cell;
+					position[unknowns++] = i;
+				}
 			}
+			int deficit = cons.target() - present;
+			if (deficit < 0 || deficit > unknowns || unknowns >= Long.SIZE - 1) continue;
 
-			for (Coordinate c : alwaysPresent)
-				t = t.refine(c, CellState.PRESENT);
-			for (Coordinate c : alwaysAbsent)
-				t = t.refine(c, CellState.ABSENT);
-		}
-		return t;
-	}
+			long alwaysPresent = -1, alwaysAbsent = -1, all = (1L << unknowns) - 1;
+			boolean feasible = false;
+			//visit each deficit-subset of the unknowns in Gosper's order
+			for (long s = (1L << deficit) - 1; s <= all; ) {
+				int min = presentMin, max = presentMax;
+				if (s != 0) {
+					min = Math.min(min, position[Long.numberOfTrailingZeros(s)]);
+					max = Math.max(max, position[63 - Long.numberOfLeadingZeros(s)]);
+				}
+				boolean contiguous = min > max || max - min + 1 == cons.target();
+				if (contiguous == cons.isContiguous()) {
+					feasible = true;
+					alwaysPresent &= s;
+					alwaysAbsent &= ~s;
+				}
+				if (s == 0) break;
+				long lowest = s & -s, ripple = s + lowest;
+				s = (((ripple ^ s) >>> 2) / lowest) | ripple;
+			}
+			//infeasible means we misread something; leave it for the next round
+			if (!feasible) continue;
 
-	private static boolean isContiguous(Puzzle p, Constraint cons, Set<Coordinate> present) {
-		if (cons instanceof CellConstraint) {
-			//set is contiguous if we can get anywhere from anywhere, so flood fill
-			//from an arbitrary point
-			Set<Coordinate> closed = new HashSet<>();
-			Deque<Coordinate> frontier = new ArrayDeque<>();
-			frontier.add(present.iterator().next());
-			while (!frontier.isEmpty()) {
-				Coordinate c = frontier.pop();
-				if (closed.add(c))
-					c.neighbors().filter(present::contains).forEachOrdered(frontier::add);
+			for (int i = 0; i < unknowns; ++i) {
+				if ((alwaysPresent & (1L << i)) != 0)
+					state.markPresent(unknown[i]);
+				else if ((alwaysAbsent & (1L << i)) != 0)
+					state.markAbsent(unknown[i]);
 			}
-			return closed.equals(present);
-		} else if (cons instanceof AxisConstraint) {
-			ToIntFunction<Coordinate> axisExtractor = ((AxisConstraint)cons).axisExtractor();
-			ToIntFunction<Coordinate> sortExtractor = ((AxisConstraint)cons).sortAxisExtractor();
-			int axisValue = axisExtractor.applyAsInt(cons.region().get(0));
-			List<Coordinate> axis = p.cells()
-					.filter(c -> axisExtractor.applyAsInt(c) == axisValue)
-					.sorted(Comparator.comparingInt(sortExtractor))
-					.collect(Collectors.toList());
-			IntSummaryStatistics stats = axis.stream()
-					.filter(c -> p.isPresent(c) || present.contains(c))
-					.mapToInt(axis::indexOf)
-					.summaryStatistics();
-			assert stats.getMin() != -1;
-			return (stats.getMax() - stats.getMin() + 1) == cons.target();
-		} else
-			throw new UnsupportedOperationException(cons.getClass().getSimpleName()+" "+cons);
+		}
+		return state.deductions() > before;
 	}
 }